@@ -6,7 +6,10 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import jp.co.apidemo.config.AdaptiveBCryptPasswordEncoder;
 
 import jp.co.apidemo.entities.Employee;
 import jp.co.apidemo.entities.Role;
@@ -26,9 +29,15 @@ public class ApiDemoApplication {
 		SpringApplication.run(ApiDemoApplication.class, args);
 	}
 
+	/*
+	 * <pre>
+	 * Password encoder, new hashes are {bcrypt} with configured strength
+	 * Unprefixed or weaker hashes still match and are re-hashed on next login
+	 * </pre>
+	 */
 	@Bean
-	BCryptPasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+	PasswordEncoder passwordEncoder(@Value("${app.security.password.bcrypt-strength:10}") int strength) {
+		return AdaptiveBCryptPasswordEncoder.delegating(strength);
 	}
 
 	@Bean
@@ -0,0 +1,70 @@
+package jp.co.apidemo.config;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * <pre>
+ * BCrypt encoder that reports hashes with a cost below the configured strength as needing upgrade
+ * Used with DelegatingPasswordEncoder, the authentication provider then re-hashes on next successful login
+ * </pre>
+ */
+public class AdaptiveBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+    public static final String ID = "bcrypt";
+
+    private static final String PREFIX = "{" + ID + "}";
+
+    private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+
+    public AdaptiveBCryptPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    /*
+     * <pre>
+     * Delegating encoder writing {bcrypt} hashes, unprefixed hashes are matched as bcrypt
+     * DelegatingPasswordEncoder only compares {id} prefixes on upgrade, so the cost of {bcrypt} hashes is checked here
+     * </pre>
+     * @param int strength : BCrypt cost of new hashes
+     * @return PasswordEncoder : Encoder of the application
+     */
+    public static PasswordEncoder delegating(int strength) {
+        AdaptiveBCryptPasswordEncoder bcrypt = new AdaptiveBCryptPasswordEncoder(strength);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(ID, bcrypt);
+        DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder(ID, encoders) {
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                if (encodedPassword != null && encodedPassword.startsWith(PREFIX)) {
+                    return bcrypt.upgradeEncoding(encodedPassword.substring(PREFIX.length()));
+                }
+                return super.upgradeEncoding(encodedPassword);
+            }
+        };
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return passwordEncoder;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) < strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+}
@@ -0,0 +1,41 @@
+package jp.co.apidemo.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * <pre>
+ * Executors of asynchronous endpoints
+ * database : JPA calls, sized to the connection pool
+ * hashing  : BCrypt encoding, sized to the cores, so hashing bursts do not hold database threads
+ * stream   : Replay and delivery of change event streams, a blocked client holds one of these threads only
+ * </pre>
+ */
+@Configuration
+@EnableConfigurationProperties(AsyncProperties.class)
+public class AsyncConfig {
+
+    public static final String DATABASE_EXECUTOR = "database";
+    public static final String HASHING_EXECUTOR = "hashing";
+    public static final String STREAM_EXECUTOR = "stream";
+
+    @Bean
+    BoundedExecutor databaseExecutor(AsyncProperties asyncProperties) {
+        return executor(DATABASE_EXECUTOR, asyncProperties);
+    }
+
+    @Bean
+    BoundedExecutor hashingExecutor(AsyncProperties asyncProperties) {
+        return executor(HASHING_EXECUTOR, asyncProperties);
+    }
+
+    @Bean
+    BoundedExecutor streamExecutor(AsyncProperties asyncProperties) {
+        return executor(STREAM_EXECUTOR, asyncProperties);
+    }
+
+    private BoundedExecutor executor(String name, AsyncProperties asyncProperties) {
+        return new BoundedExecutor(name, asyncProperties.getExecutors().getOrDefault(name, new AsyncProperties.PoolSpec()));
+    }
+}
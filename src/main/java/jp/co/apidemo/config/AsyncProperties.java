@@ -0,0 +1,33 @@
+package jp.co.apidemo.config;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * <pre>
+ * Executors of asynchronous endpoints from application.properties
+ * app.async.executors[name].core-size      : Threads kept alive
+ * app.async.executors[name].max-size       : Threads started when queue is full
+ * app.async.executors[name].queue-capacity : Waiting tasks, further tasks are rejected
+ * app.async.retry-after                    : Retry-After of 503 response when a task is rejected
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "app.async")
+public class AsyncProperties {
+
+    private Duration retryAfter = Duration.ofSeconds(1);
+    private Map<String, PoolSpec> executors = new LinkedHashMap<>();
+
+    @Data
+    public static class PoolSpec {
+        private int coreSize = 4;
+        private int maxSize = 4;
+        private int queueCapacity = 100;
+    }
+}
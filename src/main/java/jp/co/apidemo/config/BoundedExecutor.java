@@ -0,0 +1,53 @@
+package jp.co.apidemo.config;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * <pre>
+ * Thread pool with bounded queue, tasks beyond the queue are rejected at once instead of waiting
+ * Rejections are counted with the pool figures for the executor statistics API
+ * Tasks run with the security context of the submitting thread (read-your-writes routing of replicas)
+ * </pre>
+ */
+public class BoundedExecutor extends ThreadPoolTaskExecutor {
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public BoundedExecutor(String name, AsyncProperties.PoolSpec spec) {
+        setThreadNamePrefix(name + "-");
+        setCorePoolSize(spec.getCoreSize());
+        setMaxPoolSize(Math.max(spec.getCoreSize(), spec.getMaxSize()));
+        setQueueCapacity(spec.getQueueCapacity());
+        setTaskDecorator(task -> DelegatingSecurityContextRunnable.create(task, null));
+        setRejectedExecutionHandler((runnable, executor) -> {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Executor " + name + " is saturated");
+        });
+    }
+
+    /*
+     * <pre>
+     * Current pool figures
+     * </pre>
+     * @return Map<String, Object> : active, poolSize, maxPoolSize, queued, queueRemaining, completed, rejected
+     */
+    public Map<String, Object> getStatistics() {
+        ThreadPoolExecutor pool = getThreadPoolExecutor();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("active", pool.getActiveCount());
+        statistics.put("poolSize", pool.getPoolSize());
+        statistics.put("maxPoolSize", pool.getMaximumPoolSize());
+        statistics.put("queued", pool.getQueue().size());
+        statistics.put("queueRemaining", pool.getQueue().remainingCapacity());
+        statistics.put("completed", pool.getCompletedTaskCount());
+        statistics.put("rejected", rejected.get());
+        return statistics;
+    }
+}
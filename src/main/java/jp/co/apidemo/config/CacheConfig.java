@@ -1,26 +1,74 @@
 package jp.co.apidemo.config;
 
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
-import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.ehcache.EhCacheCacheManager;
-import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
+import org.springframework.cache.jcache.JCacheCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
+
+import javax.cache.Caching;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.Map;
+import java.util.UUID;
 
 @Configuration
+@EnableConfigurationProperties(CacheProperties.class)
 public class CacheConfig {
 
     @Bean
-    CacheManager cacheManager(){
-        return new EhCacheCacheManager(ehCacheManager());
+    CacheManager cacheManager(javax.cache.CacheManager jCacheManager){
+        return new JCacheCacheManager(jCacheManager);
+    }
+
+    // Hibernate second-level cache regions live in the same JCache manager, sized by app.cache.caches as well
+    @Bean
+    HibernatePropertiesCustomizer secondLevelCacheManager(javax.cache.CacheManager jCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, jCacheManager);
+    }
+
+    /*
+     * <pre>
+     * Ehcache 3 JCache manager, one per application context
+     * Caches are created from app.cache.caches with statistics enabled
+     * </pre>
+     */
+    @Bean(destroyMethod = "close")
+    javax.cache.CacheManager jCacheManager(CacheProperties cacheProperties) {
+        ConfigurationBuilder configuration = ConfigurationBuilder.newConfigurationBuilder();
+        for (Map.Entry<String, CacheProperties.CacheSpec> cache : cacheProperties.getCaches().entrySet()) {
+            configuration = configuration.withCache(cache.getKey(), cacheConfiguration(cache.getValue()));
+        }
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        javax.cache.CacheManager cacheManager = provider.getCacheManager(
+            URI.create("urn:apidemo:" + UUID.randomUUID()), configuration.build());
+        cacheManager.getCacheNames().forEach(name -> cacheManager.enableStatistics(name, true));
+        return cacheManager;
     }
 
-    private net.sf.ehcache.CacheManager ehCacheManager() {
-        EhCacheManagerFactoryBean factoryBean = new EhCacheManagerFactoryBean();
-        factoryBean.setConfigLocation(new ClassPathResource("ehcache.xml"));
-        factoryBean.setShared(true);
-        return factoryBean.getObject();
+    private CacheConfiguration<Serializable, Serializable> cacheConfiguration(CacheProperties.CacheSpec spec) {
+        // Heap tier counts entries : sizing it in bytes walks object graphs by reflection (Ehcache SizeOf),
+        // which the module system denies from JDK 16 on and puts are then silently dropped
+        ResourcePoolsBuilder pools = ResourcePoolsBuilder.newResourcePoolsBuilder()
+            .heap(spec.getHeapEntries(), EntryUnit.ENTRIES);
+        if (spec.getOffheap() != null && spec.getOffheap().toBytes() > 0) {
+            pools = pools.offheap(spec.getOffheap().toBytes(), MemoryUnit.B);
+        }
+        // Values are held serialized, so a cached entry never holds the persistence context reachable from managed entities
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(Serializable.class, Serializable.class, pools)
+            .withValueSerializingCopier()
+            .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(spec.getTimeToLive()))
+            .build();
     }
     
 }
@@ -0,0 +1,34 @@
+package jp.co.apidemo.config;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * <pre>
+ * Cache sizing from application.properties
+ * app.cache.caches[name].heap-entries  : On-heap tier size in entries
+ * app.cache.caches[name].offheap       : Optional off-heap tier size in bytes (KB/MB suffix allowed)
+ * app.cache.caches[name].time-to-live  : Entry time to live
+ * app.cache.caches[name].refresh-after : Optional age after which a hit is reloaded in background (read through caches only)
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+
+    private Map<String, CacheSpec> caches = new LinkedHashMap<>();
+
+    @Data
+    public static class CacheSpec {
+        private long heapEntries = 1000;
+        private DataSize offheap;
+        private Duration timeToLive = Duration.ofMinutes(10);
+        private Duration refreshAfter;
+    }
+}
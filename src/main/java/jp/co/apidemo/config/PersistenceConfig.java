@@ -0,0 +1,34 @@
+package jp.co.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * <pre>
+ * Connection pool instrumentation
+ * Metrics tracker must be set before the pool starts, so it is registered while the data source bean is initialized
+ * </pre>
+ */
+@Configuration
+public class PersistenceConfig {
+
+    @Bean
+    static PoolMetrics poolMetrics() {
+        return new PoolMetrics();
+    }
+
+    @Bean
+    static BeanPostProcessor poolMetricsRegistration(PoolMetrics poolMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource) {
+                    ((HikariDataSource) bean).setMetricsTrackerFactory(poolMetrics);
+                }
+                return bean;
+            }
+        };
+    }
+}
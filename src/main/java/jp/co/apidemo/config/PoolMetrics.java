@@ -0,0 +1,81 @@
+package jp.co.apidemo.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * <pre>
+ * HikariCP metrics tracker : connection acquire time, usage time and timeouts since start
+ * Pool gauges (active, idle, pending) are read from the pool statistics handed over by Hikari
+ * Registered on the data source by PersistenceConfig before the pool starts
+ * </pre>
+ */
+public class PoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator acquireMaxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder usageMillis = new LongAdder();
+    private final LongAccumulator usageMaxMillis = new LongAccumulator(Math::max, 0);
+    private final AtomicLong timeouts = new AtomicLong();
+    private volatile PoolStats poolStats;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquired.increment();
+        acquireNanos.add(elapsedAcquiredNanos);
+        acquireMaxNanos.accumulate(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usageMillis.add(elapsedBorrowedMillis);
+        usageMaxMillis.accumulate(elapsedBorrowedMillis);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    /*
+     * <pre>
+     * Pool gauges and acquire figures
+     * </pre>
+     * @return Map<String, Object> : active, idle, pending, total, max, acquired, acquireAvgMillis, acquireMaxMillis,
+     *                               usageAvgMillis, usageMaxMillis, timeouts
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            statistics.put("active", stats.getActiveConnections());
+            statistics.put("idle", stats.getIdleConnections());
+            statistics.put("pending", stats.getPendingThreads());
+            statistics.put("total", stats.getTotalConnections());
+            statistics.put("max", stats.getMaxConnections());
+        }
+        long count = acquired.sum();
+        statistics.put("acquired", count);
+        statistics.put("acquireAvgMillis", count == 0 ? 0.0 : TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / count) / 1000.0);
+        statistics.put("acquireMaxMillis", TimeUnit.NANOSECONDS.toMicros(acquireMaxNanos.get()) / 1000.0);
+        statistics.put("usageAvgMillis", count == 0 ? 0.0 : (double) usageMillis.sum() / count);
+        statistics.put("usageMaxMillis", usageMaxMillis.get());
+        statistics.put("timeouts", timeouts.get());
+        return statistics;
+    }
+}
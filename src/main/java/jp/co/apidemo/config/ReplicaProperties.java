@@ -0,0 +1,40 @@
+package jp.co.apidemo.config;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * <pre>
+ * Read replicas from application.properties, routing is off when no replica is configured
+ * app.datasource.replicas[n].url      : JDBC url of replica
+ * app.datasource.replicas[n].username : User of replica, user of primary when unset
+ * app.datasource.replicas[n].password : Password of replica, password of primary when unset
+ * app.datasource.balancing            : round-robin or least-connections
+ * app.datasource.read-your-writes     : Reads of a client stay on primary this long after its last write
+ * app.datasource.migrate-replicas     : Run migrations on replicas too (local stand-ins without replication)
+ * Replica pools take the spring.datasource.hikari settings of primary
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "app.datasource")
+public class ReplicaProperties {
+
+    public enum Balancing { ROUND_ROBIN, LEAST_CONNECTIONS }
+
+    private List<Replica> replicas = new ArrayList<>();
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    private Duration readYourWrites = Duration.ofSeconds(5);
+    private boolean migrateReplicas;
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
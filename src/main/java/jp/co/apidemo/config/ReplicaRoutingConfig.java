@@ -0,0 +1,64 @@
+package jp.co.apidemo.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * <pre>
+ * Application data source routed between primary and read replicas, active when app.datasource.replicas is set
+ * Primary pool is built from spring.datasource as without replicas, replica pools copy its settings
+ * Pools are not beans of their own, so data source initialization runs once against the routing data source
+ * </pre>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "app.datasource", name = "replicas[0].url")
+@EnableConfigurationProperties(ReplicaProperties.class)
+public class ReplicaRoutingConfig {
+
+    @Bean(destroyMethod = "close")
+    ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties, ReplicaProperties replicaProperties,
+                                        PoolMetrics poolMetrics, Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setMetricsTrackerFactory(poolMetrics);
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        List<ReplicaProperties.Replica> specs = replicaProperties.getReplicas();
+        for (int i = 0; i < specs.size(); i++) {
+            HikariDataSource replica = replica(primary, specs.get(i), i);
+            if (replicaProperties.isMigrateReplicas()) {
+                Flyway.configure().dataSource(replica).load().migrate();
+            }
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, replicaProperties);
+    }
+
+    // Pool metrics stay with primary, replica load is reported by ReplicaRoutingDataSource
+    private static HikariDataSource replica(HikariDataSource primary, ReplicaProperties.Replica spec, int index) {
+        HikariConfig config = new HikariConfig();
+        primary.copyStateTo(config);
+        config.setMetricsTrackerFactory(null);
+        config.setPoolName((primary.getPoolName() == null ? "employee-pool" : primary.getPoolName()) + "-replica-" + index);
+        config.setJdbcUrl(spec.getUrl());
+        if (spec.getUsername() != null) {
+            config.setUsername(spec.getUsername());
+        }
+        if (spec.getPassword() != null) {
+            config.setPassword(spec.getPassword());
+        }
+        return new HikariDataSource(config);
+    }
+}
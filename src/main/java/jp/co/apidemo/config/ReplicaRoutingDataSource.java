@@ -0,0 +1,216 @@
+package jp.co.apidemo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * <pre>
+ * Routes connections of read only transactions (@Transactional(readOnly = true), Spring Data reads) to replicas
+ * Read write transactions and connections outside transactions use primary
+ * A client (authenticated user name, "" when anonymous) whose read write transaction committed within
+ * the read-your-writes window reads from primary, so it does not miss its own writes on a lagging replica
+ * Physical connections are taken lazily on first statement, the read only flag is set after the transaction began
+ * Cache fills read primary (readPrimary), or are skipped while a replica read may miss a write (isLaggingRead),
+ * so a cached entry never keeps a replica's stale row for its time to live
+ * </pre>
+ */
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy {
+
+    public static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_READS = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> LAGGING_READS = new ThreadLocal<>();
+
+    private final HikariDataSource primary;
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final List<HikariDataSource> replicas;
+    private final ReplicaProperties.Balancing balancing;
+    private final long readYourWritesNanos;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> routed = new LinkedHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile long lastCommit;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas, ReplicaProperties properties) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.balancing = properties.getBalancing();
+        this.readYourWritesNanos = properties.getReadYourWrites().toNanos();
+        this.lastCommit = System.nanoTime() - readYourWritesNanos;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        routed.put(PRIMARY, new LongAdder());
+        for (HikariDataSource replica : replicas) {
+            targets.put(replica.getPoolName(), replica);
+            replicaKeys.add(replica.getPoolName());
+            routed.put(replica.getPoolName(), new LongAdder());
+        }
+        Router router = new Router();
+        router.setTargetDataSources(targets);
+        router.setDefaultTargetDataSource(primary);
+        router.afterPropertiesSet();
+        setTargetDataSource(router);
+    }
+
+    private class Router extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            String key = route();
+            routed.get(key).increment();
+            return key;
+        }
+    }
+
+    private String route() {
+        String client = currentClient();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        long now = System.nanoTime();
+                        lastWrites.put(client, now);
+                        lastCommit = now;
+                    }
+                });
+            }
+            return PRIMARY;
+        }
+        if (PRIMARY_READS.get() != null) {
+            return PRIMARY;
+        }
+        Long lastWrite = lastWrites.get(client);
+        if (lastWrite != null) {
+            if (System.nanoTime() - lastWrite < readYourWritesNanos) {
+                return PRIMARY;
+            }
+            lastWrites.remove(client, lastWrite);
+        }
+        if (isReplicaLagging() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            LAGGING_READS.set(Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    LAGGING_READS.remove();
+                }
+            });
+        }
+        return balancing == ReplicaProperties.Balancing.LEAST_CONNECTIONS ? leastConnections() : roundRobin();
+    }
+
+    /*
+     * <pre>
+     * Run reads of a cache fill on primary
+     * Applies to transactions begun inside, a transaction already reading a replica keeps its connection
+     * </pre>
+     * @param Supplier<T> read : Reads, typically one repository call
+     * @return T : Result of read
+     */
+    public static <T> T readPrimary(Supplier<T> read) {
+        if (PRIMARY_READS.get() != null) {
+            return read.get();
+        }
+        PRIMARY_READS.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            PRIMARY_READS.remove();
+        }
+    }
+
+    /*
+     * <pre>
+     * Current transaction reads a replica while a write committed within the read-your-writes window,
+     * its results must not be cached (false without replicas)
+     * </pre>
+     * @return boolean : True if results may miss a committed write
+     */
+    public static boolean isLaggingRead() {
+        return LAGGING_READS.get() != null;
+    }
+
+    /*
+     * <pre>
+     * A write committed within the read-your-writes window, replicas may not have it yet
+     * </pre>
+     * @return boolean : True if replica reads may miss a committed write
+     */
+    public boolean isReplicaLagging() {
+        return System.nanoTime() - lastCommit < readYourWritesNanos;
+    }
+
+    private String roundRobin() {
+        return replicaKeys.get(Math.floorMod(next.getAndIncrement(), replicaKeys.size()));
+    }
+
+    // Fewest borrowed connections, ties go to the first replica
+    private String leastConnections() {
+        int selected = 0;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int active = activeConnections(replicas.get(i));
+            if (active < fewest) {
+                selected = i;
+                fewest = active;
+            }
+        }
+        return replicaKeys.get(selected);
+    }
+
+    private static int activeConnections(HikariDataSource dataSource) {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    private static String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "" : authentication.getName();
+    }
+
+    /*
+     * <pre>
+     * Close primary and replica pools
+     * </pre>
+     */
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    /*
+     * <pre>
+     * Connections routed per target since start and borrowed connections per replica
+     * </pre>
+     * @return Map<String, Object> : balancing, routed (primary and replica pool names), replicaActive, stickyClients
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("balancing", balancing);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        routed.forEach((key, count) -> counts.put(key, count.sum()));
+        statistics.put("routed", counts);
+        Map<String, Integer> active = new LinkedHashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            active.put(replicaKeys.get(i), activeConnections(replicas.get(i)));
+        }
+        statistics.put("replicaActive", active);
+        statistics.put("stickyClients", lastWrites.size());
+        return statistics;
+    }
+}
@@ -2,6 +2,8 @@ package jp.co.apidemo.config;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -10,25 +12,32 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import jp.co.apidemo.filter.CustomAuthenticationFilter;
 import jp.co.apidemo.filter.CustomAuthorizationFilter;
+import jp.co.apidemo.service.TokenService;
 
 import static org.springframework.http.HttpMethod.GET;
 import static org.springframework.http.HttpMethod.POST;
 import static org.springframework.http.HttpMethod.PUT;
+import static org.springframework.http.HttpMethod.PATCH;
 import static org.springframework.http.HttpMethod.DELETE;
 import static org.springframework.security.config.http.SessionCreationPolicy.*;
 
 
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(TokenProperties.class)
 @RequiredArgsConstructor
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
     private  UserDetailsService userDetailsService;
-    private  BCryptPasswordEncoder bCryptPasswordEncoder;
+    private  PasswordEncoder passwordEncoder;
+    private  TokenService tokenService;
+
+    @Value("${app.security.token-cache-size:10000}")
+    private int tokenCacheSize;
 
     public static final String[] PUBLIC_URLS={
      
@@ -40,14 +49,16 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     };
 
     @Autowired
-    public SecurityConfig(UserDetailsService userDetailsService, BCryptPasswordEncoder passwordEncoder) {
-        this.bCryptPasswordEncoder = passwordEncoder;
+    public SecurityConfig(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder, TokenService tokenService) {
+        this.passwordEncoder = passwordEncoder;
         this.userDetailsService = userDetailsService;
+        this.tokenService = tokenService;
     }
 
+    // userDetailsService also implements UserDetailsPasswordService, hashes are upgraded on login
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userDetailsService).passwordEncoder(bCryptPasswordEncoder);
+        auth.userDetailsService(userDetailsService).passwordEncoder(passwordEncoder);
     }
 
     /*  
@@ -61,7 +72,7 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Override
     protected void configure(HttpSecurity http) throws Exception {
 
-        CustomAuthenticationFilter customAuthenticationFilter = new CustomAuthenticationFilter(authenticationManagerBean());
+        CustomAuthenticationFilter customAuthenticationFilter = new CustomAuthenticationFilter(authenticationManagerBean(), tokenService);
         customAuthenticationFilter.setFilterProcessesUrl("/api/v1/login");
         http.authorizeRequests().antMatchers("/").permitAll();
         http.authorizeRequests().antMatchers(PUBLIC_URLS).permitAll();
@@ -72,13 +83,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         http.authorizeRequests().antMatchers("/api/v1/login**", "/api/v1/token/refresh/**").permitAll();
         http.authorizeRequests().antMatchers(GET, "/api/v1/employee/get**").permitAll();
         http.authorizeRequests().antMatchers(POST, "/api/v1/employee/save**").hasAnyAuthority("ROLE_MANAGER");
+        http.authorizeRequests().antMatchers(POST, "/api/v1/async/employee/save**").hasAnyAuthority("ROLE_MANAGER");
+        http.authorizeRequests().antMatchers(POST, "/api/v1/employees/import**").hasAnyAuthority("ROLE_MANAGER");
         http.authorizeRequests().antMatchers(POST, "/api/v1/role/save**").hasAnyAuthority("ROLE_MANAGER");
         http.authorizeRequests().antMatchers(POST, "/api/v1/role/addtoemployee**").hasAnyAuthority("ROLE_MANAGER");
         http.authorizeRequests().antMatchers(DELETE, "/api/v1/employee/delete**").hasAnyAuthority("ROLE_MANAGER");
         http.authorizeRequests().antMatchers(PUT, "/api/v1/employee/update**").hasAnyAuthority("ROLE_TEAM_LEADER");
+        http.authorizeRequests().antMatchers(PATCH, "/api/v1/employee/update**").hasAnyAuthority("ROLE_TEAM_LEADER");
+        http.authorizeRequests().antMatchers(GET, "/api/v1/cache/**").hasAnyAuthority("ROLE_MANAGER");
+        http.authorizeRequests().antMatchers(GET, "/api/v1/executors/**").hasAnyAuthority("ROLE_MANAGER");
+        http.authorizeRequests().antMatchers(GET, "/api/v1/persistence/**").hasAnyAuthority("ROLE_MANAGER");
+        http.authorizeRequests().antMatchers(GET, "/api/v1/employees/export**").hasAnyAuthority("ROLE_MANAGER");
         http.authorizeRequests().anyRequest().authenticated();
         http.addFilter(customAuthenticationFilter);
-        http.addFilterBefore(new CustomAuthorizationFilter(), UsernamePasswordAuthenticationFilter.class);
+        http.addFilterBefore(new CustomAuthorizationFilter(tokenService, tokenCacheSize), UsernamePasswordAuthenticationFilter.class);
     }
 
     @Bean
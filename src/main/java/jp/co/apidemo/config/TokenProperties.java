@@ -0,0 +1,31 @@
+package jp.co.apidemo.config;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/*
+ * <pre>
+ * JWT signing settings from application.properties
+ * app.security.jwt.algorithm          : HS256 (shared secret), RS256 or ES256 (key pair)
+ * app.security.jwt.secret             : HS256 secret
+ * app.security.jwt.public-key         : RS256/ES256 base64 X.509 public key, enough for verify only nodes
+ * app.security.jwt.private-key        : RS256/ES256 base64 PKCS#8 private key, needed to sign
+ * app.security.jwt.access-token-ttl   : Access token life time
+ * app.security.jwt.refresh-token-ttl  : Refresh token life time
+ * If no key pair is configured for RS256/ES256 a random one is generated at startup
+ * </pre>
+ */
+@Data
+@ConfigurationProperties(prefix = "app.security.jwt")
+public class TokenProperties {
+
+    private String algorithm = "HS256";
+    private String secret = "secret";
+    private String publicKey;
+    private String privateKey;
+    private Duration accessTokenTtl = Duration.ofMinutes(10);
+    private Duration refreshTokenTtl = Duration.ofMinutes(30);
+}
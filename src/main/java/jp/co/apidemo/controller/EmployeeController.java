@@ -1,24 +1,33 @@
 package jp.co.apidemo.controller;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jp.co.apidemo.config.AsyncProperties;
+import jp.co.apidemo.entities.DepartmentAggregate;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeSummary;
 import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.service.CacheStatisticsService;
+import jp.co.apidemo.service.EmployeeAsyncService;
+import jp.co.apidemo.service.EmployeeChangeService;
+import jp.co.apidemo.service.EmployeeETags;
+import jp.co.apidemo.service.EmployeeExportService;
+import jp.co.apidemo.service.EmployeeImportService;
 import jp.co.apidemo.service.EmployeeService;
+import jp.co.apidemo.service.PersistenceStatisticsService;
+import jp.co.apidemo.service.TokenService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
@@ -27,6 +36,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 import javax.validation.Valid;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
@@ -38,12 +49,69 @@ import org.springframework.cache.annotation.EnableCaching;
 @RequestMapping("/api/v1")
 @RequiredArgsConstructor
 public class EmployeeController {
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+    private static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
     private EmployeeService employeeService;
+    private CacheStatisticsService cacheStatisticsService;
+    private TokenService tokenService;
+    private EmployeeImportService employeeImportService;
+    private EmployeeExportService employeeExportService;
+    private EmployeeETags employeeETags;
+    private EmployeeAsyncService employeeAsyncService;
+    private AsyncProperties asyncProperties;
+    private PersistenceStatisticsService persistenceStatisticsService;
+    private EmployeeChangeService employeeChangeService;
 
     @Autowired
     public void setEmployeeService(EmployeeService employeeService) {
         this.employeeService = employeeService;
     }
+
+    @Autowired
+    public void setEmployeeImportService(EmployeeImportService employeeImportService) {
+        this.employeeImportService = employeeImportService;
+    }
+
+    @Autowired
+    public void setEmployeeExportService(EmployeeExportService employeeExportService) {
+        this.employeeExportService = employeeExportService;
+    }
+
+    @Autowired
+    public void setEmployeeAsyncService(EmployeeAsyncService employeeAsyncService) {
+        this.employeeAsyncService = employeeAsyncService;
+    }
+
+    @Autowired
+    public void setEmployeeChangeService(EmployeeChangeService employeeChangeService) {
+        this.employeeChangeService = employeeChangeService;
+    }
+
+    @Autowired
+    public void setPersistenceStatisticsService(PersistenceStatisticsService persistenceStatisticsService) {
+        this.persistenceStatisticsService = persistenceStatisticsService;
+    }
+
+    @Autowired
+    public void setAsyncProperties(AsyncProperties asyncProperties) {
+        this.asyncProperties = asyncProperties;
+    }
+
+    @Autowired
+    public void setEmployeeETags(EmployeeETags employeeETags) {
+        this.employeeETags = employeeETags;
+    }
+
+    @Autowired
+    public void setTokenService(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Autowired
+    public void setCacheStatisticsService(CacheStatisticsService cacheStatisticsService) {
+        this.cacheStatisticsService = cacheStatisticsService;
+    }
     
     /*
      * <pre>
@@ -51,20 +119,135 @@ public class EmployeeController {
      * If name == null : retrive all employees data  in paging format by default sorted in descending format
      * </pre>
      * @RequestParam Sting name : Not mandatory , name of employee
+     * @RequestParam String department : Not mandatory , department of employee (offset paging only)
+     * @RequestParam Integer minSalary : Not mandatory , lowest salary (offset paging only)
+     * @RequestParam Integer maxSalary : Not mandatory , highest salary (offset paging only)
      * @RequestParam int page : page parameter
      * @param int size : page size limit
      * @param String[] sort : sorting criteria,sorting order
+     * @RequestParam boolean withTotal : Not mandatory , skip total items/total pages count when false
+     * @RequestParam String after : Not mandatory , cursor paging when present (empty for first page, nextCursor of previous page after that)
+     * @RequestHeader String If-None-Match : Not mandatory , weak ETag of a previous response, 304 when page did not change
      * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,total items info, total pages info.)
+     *                              or with nextCursor info in cursor paging
      */
     @GetMapping("/employees")
     public ResponseEntity<Map<String, Object>> getEmployees(
         @RequestParam(value = "name",required = false) String name,
+        @RequestParam(value = "department",required = false) String department,
+        @RequestParam(value = "minSalary",required = false) Integer minSalary,
+        @RequestParam(value = "maxSalary",required = false) Integer maxSalary,
         @RequestParam(defaultValue = "0") int page,
         @RequestParam(defaultValue = "3") int size,
-        @RequestParam(defaultValue = "id,desc") String[] sort
+        @RequestParam(defaultValue = "id,desc") String[] sort,
+        @RequestParam(defaultValue = "true") boolean withTotal,
+        @RequestParam(value = "after", required = false) String after,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        // Page unchanged since the ETag was computed : no database access
+        String query = Arrays.asList(name, department, minSalary, maxSalary, page, size, String.join(";", sort), withTotal, after).toString();
+        Long generation = employeeETags.generation();
+        String knownETag = employeeETags.getPage(generation, query);
+        if (EmployeeETags.matches(ifNoneMatch, knownETag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(knownETag).build();
+        }
+        Map<String, Object> employees = after != null
+            ? employeeService.retrieveEmployeesAfter(name,after,size,sort)
+            : employeeService.retrieveEmployees(name,department,minSalary,maxSalary,page,size,sort,withTotal);
+        String etag = employeeETags.forPage(employees);
+        employeeETags.putPage(generation, query, etag);
+        return ResponseEntity.ok().eTag(etag).body(employees);
+    }
+
+    /*
+     * <pre>
+     * API : Headcount and salary statistics per department
+     * Served from memory, dashboards can poll without database access
+     * </pre>
+     * @return ResponseEntity<List<DepartmentAggregate>> : department, headcount, salarySum, salaryAvg, salaryMin, salaryMax
+     */
+    @GetMapping("/employees/aggregates")
+    public ResponseEntity<List<DepartmentAggregate>> getDepartmentAggregates() {
+        return ResponseEntity.ok().body(employeeService.getDepartmentAggregates());
+    }
+
+    /*
+     * <pre>
+     * API : Search employees by name and department
+     * </pre>
+     * @RequestParam String q : Searched text
+     * @RequestParam String mode : contains (default), prefix or ranked (typo tolerant, best match first)
+     * @RequestParam int limit : Maximum number of employees
+     * @return Map<String,Object> : Return map with employee data and search mode
+     */
+    @GetMapping("/employees/search")
+    public ResponseEntity<Map<String, Object>> searchEmployees(
+        @RequestParam("q") String q,
+        @RequestParam(defaultValue = "contains") String mode,
+        @RequestParam(defaultValue = "20") int limit
     ) {
-        Map<String, Object> employees = employeeService.retrieveEmployees(name,page,size,sort);
-        return new ResponseEntity<>(employees,HttpStatus.OK);
+        return ResponseEntity.ok().body(employeeService.searchEmployees(q, mode, limit));
+    }
+
+    /*
+     * <pre>
+     * API : Fetch many employees with employee ids in one call
+     * Cached employees are read at once, the others with one query
+     * </pre>
+     * @RequestBody List<Long> employeeIds : Ids to fetch (Json format:[1,2,3]) , at most 1000
+     * @return ResponseEntity<Map<String,Object>> : employees in request order and notFound ids
+     */
+    @PostMapping("/employees/batch-get")
+    public ResponseEntity<Map<String, Object>> getEmployeesById(@RequestBody List<Long> employeeIds) {
+        return ResponseEntity.ok().body(employeeService.getEmployees(employeeIds));
+    }
+
+    /*
+     * <pre>
+     * API : Employee change feed
+     * Created, updated, deleted employees and role assignments in publish order, from the outbox
+     * </pre>
+     * @RequestParam long after : Not mandatory , offset to resume from (next of previous call), 0 for the start of the feed
+     * @RequestParam int limit : Not mandatory , maximum number of changes, at most 1000
+     * @return ResponseEntity<Map<String,Object>> : changes (position, type, employeeId, name, salary, department, version, role, changedAt)
+     *                                              and next (offset of the following call)
+     */
+    @GetMapping("/employees/changes")
+    public ResponseEntity<Map<String, Object>> getEmployeeChanges(@RequestParam(defaultValue = "0") long after,
+                                                                  @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok().body(employeeChangeService.getChanges(after, limit));
+    }
+
+    /*
+     * <pre>
+     * API : Incremental sync, employees changed since a watermark
+     * Each changed employee is returned once with its current state, deleted employees as tombstones
+     * </pre>
+     * @RequestParam long since : Watermark (next) of the previous call, 0 for a full sync
+     * @RequestParam int limit : Not mandatory , maximum number of employees, at most 1000
+     * @return ResponseEntity<Map<String,Object>> : employees (id, name, salary, department, version, createdAt, updatedAt,
+     *                                              deletedAt, position) and next (watermark of the following call)
+     */
+    @GetMapping(value = "/employees/changes", params = "since")
+    public ResponseEntity<Map<String, Object>> getChangedEmployees(@RequestParam long since,
+                                                                   @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok().body(employeeChangeService.getChangedEmployees(since, limit));
+    }
+
+    /*
+     * <pre>
+     * API : Employee change stream (Server-Sent Events)
+     * Changes after the offset are replayed, then changes are pushed as they are published
+     * Event id is the position, a reconnecting EventSource resumes with Last-Event-ID
+     * </pre>
+     * @RequestParam Long after : Not mandatory , offset to resume from, changes from now on when absent
+     * @RequestHeader Long Last-Event-ID : Not mandatory , id of the last received event, takes precedence over after
+     * @return SseEmitter : text/event-stream of changes, event name is the change type
+     */
+    @GetMapping(value = "/employees/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEmployeeChanges(@RequestParam(required = false) Long after,
+                                            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return employeeChangeService.streamChanges(lastEventId != null ? lastEventId : after);
     }
 
     /*
@@ -72,11 +255,14 @@ public class EmployeeController {
      * API : Fetch employees from database with employee id
      * </pre>
      * @PathVariable Long employeeId : Id for which data should be fetched
-     * @return ResponseEntity<Employee> : return employee entity
+     * @RequestHeader String If-None-Match : Not mandatory , ETag of a previous response, 304 when employee did not change
+     * @return ResponseEntity<EmployeeSummary> : return employee summary (id, name, salary, department, version) with strong ETag
      */
     @GetMapping("/employee/get/{employeeId}")
-    public ResponseEntity<Employee> getEmployee(@PathVariable(name="employeeId")@Validated Long employeeId) {
-        return ResponseEntity.ok().body(employeeService.getEmployee(employeeId));
+    public ResponseEntity<EmployeeSummary> getEmployee(@PathVariable(name="employeeId")@Validated Long employeeId) {
+        // Summary comes from employee cache, If-None-Match is checked by spring against the ETag
+        EmployeeSummary employee = employeeService.getEmployee(employeeId);
+        return ResponseEntity.ok().eTag(employeeETags.forEmployee(employee)).body(employee);
     }
 
     /*
@@ -91,6 +277,40 @@ public class EmployeeController {
         return ResponseEntity.ok().body(employeeService.saveEmployee(employee));
     }
 
+    /*
+     * <pre>
+     * API : Bulk insert employees to database
+     * Body is streamed, rows are inserted in JDBC batches and results are streamed back per batch
+     * </pre>
+     * @RequestBody : Json array or NDJSON (one employee json per line) of employee entities
+     * @return application/x-ndjson : One result per input row ({"row":1,"status":"CREATED","id":10,"name":"XXX"} or {"row":2,"status":"REJECTED","name":"XXX","error":"..."})
+     */
+    @PostMapping(value = "/employees/import", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE})
+    public void importEmployees(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON_VALUE);
+        employeeImportService.importEmployees(request.getInputStream(), response.getOutputStream());
+    }
+
+    /*
+     * <pre>
+     * API : Export all employees
+     * Rows are streamed from database cursor to response, password is not exported
+     * </pre>
+     * @RequestParam String format : ndjson (default) or csv
+     * @return application/x-ndjson or text/csv : One line per employee ordered by id
+     */
+    @GetMapping("/employees/export")
+    public void exportEmployees(@RequestParam(defaultValue = EmployeeExportService.FORMAT_NDJSON) String format,
+                                HttpServletResponse response) throws IOException {
+        if (EmployeeExportService.FORMAT_CSV.equalsIgnoreCase(format)) {
+            response.setContentType("text/csv;charset=UTF-8");
+            response.setHeader("Content-Disposition", "attachment; filename=employees.csv");
+        } else {
+            response.setContentType(NDJSON_VALUE);
+        }
+        employeeExportService.exportEmployees(format, response.getOutputStream());
+    }
+
      /*
      * <pre>
      * API : Insert role to database
@@ -122,51 +342,159 @@ public class EmployeeController {
      * </pre>
      * @PathVariable Long employeeId : Id for which data should be updated
      * @RequestBody Employee employee : Employee entity in json format (Json format:{"name":"XXX","salary":100,"department":"XXX","password":"1234","roles":[]})
-     * @return ResponseEntity<Employee> : return updated employee entity
+     * @RequestHeader String If-Match : Not mandatory , ETag of employee, 412 when employee changed since (password may be omitted)
+     * @return ResponseEntity<EmployeeSummary> : return updated employee summary with new ETag, 409 when version of body is stale
      */
     @PutMapping("/employee/update/{employeeId}")
-    public ResponseEntity<Employee> updateEmployee(@RequestBody Employee employee, @PathVariable(name="employeeId")Long employeeId){
-        Employee employeeData=employeeService.updateEmployee(employee,employeeId);
-        return ResponseEntity.ok().body(employeeData);
+    public ResponseEntity<EmployeeSummary> updateEmployee(@RequestBody Employee employee, @PathVariable(name="employeeId")Long employeeId,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        EmployeeSummary employeeData=employeeService.updateEmployee(employee,employeeId,employeeETags.expectedVersion(ifMatch,employeeId));
+        return ResponseEntity.ok().eTag(employeeETags.forEmployee(employeeData)).body(employeeData);
 
     }
 
+    /*
+     * <pre>
+     * API : Partial update of employee (JSON Merge Patch)
+     * Only given fields are written, password is encoded only when given
+     * </pre>
+     * @PathVariable Long employeeId : Id for which data should be updated
+     * @RequestBody Map<String,Object> patch : Fields to change (Json format:{"salary":1200} , "department":null removes department)
+     * @RequestHeader String If-Match : Not mandatory , ETag of employee, 412 when employee changed since
+     * @return ResponseEntity<EmployeeSummary> : return updated employee summary with new ETag
+     */
+    @PatchMapping(value = "/employee/update/{employeeId}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<EmployeeSummary> patchEmployee(@RequestBody Map<String, Object> patch, @PathVariable(name="employeeId")Long employeeId,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch){
+        EmployeeSummary employeeData=employeeService.patchEmployee(patch,employeeId,employeeETags.expectedVersion(ifMatch,employeeId));
+        return ResponseEntity.ok().eTag(employeeETags.forEmployee(employeeData)).body(employeeData);
+    }
+
     @GetMapping("/token/refresh")
     public void refreshToken(HttpServletRequest request, HttpServletResponse response) throws IOException {
         String authorizationHeader = request.getHeader(AUTHORIZATION);
         if(authorizationHeader != null && authorizationHeader.startsWith("employee ")) {
             try {
                 String refresh_token = authorizationHeader.substring("Employee ".length());
-                Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
-                JWTVerifier verifier = JWT.require(algorithm).build();
-                DecodedJWT decodedJWT = verifier.verify(refresh_token);
+                DecodedJWT decodedJWT = tokenService.verify(refresh_token);
                 String username = decodedJWT.getSubject();
                 Employee employee = employeeService.getEmployeeByEmployeeName(username);
-                String access_token = JWT.create()
-                    .withSubject(employee.getName())
-                    .withExpiresAt(new Date(System.currentTimeMillis() + 10 * 60 * 1000))
-                    .withIssuer(request.getRequestURL().toString())
-                    .withClaim("roles", employee.getRoles().stream().map(Role::getName).collect(Collectors.toList()))
-                    .sign(algorithm);
+                String access_token = tokenService.createAccessToken(employee.getName(),
+                    employee.getRoles().stream().map(Role::getName).collect(Collectors.toList()),
+                    request.getRequestURL().toString());
                 Map<String, String> tokens = new HashMap<>();
                 tokens.put("access_token", access_token);
                 tokens.put("refresh_token", refresh_token);
-                response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-                new ObjectMapper().writeValue(response.getOutputStream(), tokens);
+                tokenService.writeResponse(response, tokens);
             }catch (Exception exception) {
                 response.setHeader("error", exception.getMessage());
                 response.setStatus(FORBIDDEN.value());
                 //response.sendError(FORBIDDEN.value());
                 Map<String, String> error = new HashMap<>();
                 error.put("error_message", exception.getMessage());
-                response.setContentType(MimeTypeUtils.APPLICATION_JSON_VALUE);
-                new ObjectMapper().writeValue(response.getOutputStream(), error);
+                tokenService.writeResponse(response, error);
             }
         } else {
             throw new RuntimeException("Refresh token is missing");
         }
     }
 
+    /*
+     * <pre>
+     * API : Fetch employee on database executor, servlet thread is released while waiting
+     * </pre>
+     * @PathVariable Long employeeId : Id for which data should be fetched
+     * @return CompletableFuture<ResponseEntity<EmployeeSummary>> : employee summary with strong ETag, 503 when executor is saturated
+     */
+    @GetMapping("/async/employee/get/{employeeId}")
+    public CompletableFuture<ResponseEntity<EmployeeSummary>> getEmployeeAsync(@PathVariable(name="employeeId") Long employeeId) {
+        return employeeAsyncService.getEmployee(employeeId)
+            .thenApply(employee -> ResponseEntity.ok().eTag(employeeETags.forEmployee(employee)).body(employee));
+    }
+
+    /*
+     * <pre>
+     * API : Fetch employees on database executor, same parameters as /employees without cursor
+     * </pre>
+     * @return CompletableFuture<ResponseEntity<Map<String,Object>>> : employees with paging metadata, 503 when executor is saturated
+     */
+    @GetMapping("/async/employees")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> getEmployeesAsync(
+        @RequestParam(required = false) String name,
+        @RequestParam(required = false) String department,
+        @RequestParam(required = false) Integer minSalary,
+        @RequestParam(required = false) Integer maxSalary,
+        @RequestParam(defaultValue = "0") int page,
+        @RequestParam(defaultValue = "3") int size,
+        @RequestParam(defaultValue = "id,desc") String[] sort,
+        @RequestParam(defaultValue = "true") boolean withTotal
+    ) {
+        return employeeAsyncService.retrieveEmployees(name, department, minSalary, maxSalary, page, size, sort, withTotal)
+            .thenApply(employees -> ResponseEntity.ok().body(employees));
+    }
+
+    /*
+     * <pre>
+     * API : Insert employee, password hashed on hashing executor and row inserted on database executor
+     * </pre>
+     * @RequestBody Employee employee : Employee entity in json format (Json format:{"name":"XXX","salary":100,"department":"XXX","password":"1234","roles":[]})
+     * @return CompletableFuture<ResponseEntity<Employee>> : employee entity, 503 when an executor is saturated
+     */
+    @PostMapping("/async/employee/save")
+    public CompletableFuture<ResponseEntity<Employee>> saveEmployeeAsync(@Valid @RequestBody Employee employee) {
+        return employeeAsyncService.saveEmployee(employee).thenApply(saved -> ResponseEntity.ok().body(saved));
+    }
+
+    /*
+     * <pre>
+     * API : Connection pool and Hibernate statistics
+     * </pre>
+     * @return ResponseEntity<Map<String, Map<String, Object>>> : pool (active, idle, pending, acquire time) and
+     *                                                           hibernate (queries, entity loads, cache hit ratio) figures
+     */
+    @GetMapping("/persistence/statistics")
+    public ResponseEntity<Map<String, Map<String, Object>>> getPersistenceStatistics() {
+        return ResponseEntity.ok().body(persistenceStatisticsService.getStatistics());
+    }
+
+    /*
+     * <pre>
+     * API : Executor statistics
+     * </pre>
+     * @return ResponseEntity<Map<String, Map<String, Object>>> : active, queued, completed and rejected tasks per executor
+     */
+    @GetMapping("/executors/statistics")
+    public ResponseEntity<Map<String, Map<String, Object>>> getExecutorStatistics() {
+        return ResponseEntity.ok().body(employeeAsyncService.getExecutorStatistics());
+    }
+
+    /*
+     * <pre>
+     * Back pressure : a saturated executor answers 503 with Retry-After instead of queueing the request
+     * </pre>
+     * @param RejectedExecutionException exception : Rejection of database or hashing executor
+     * @return ResponseEntity<Map<String,String>> : error message
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> handleRejectedExecution(RejectedExecutionException exception) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error_message", exception.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, asyncProperties.getRetryAfter().getSeconds())))
+            .body(error);
+    }
+
+    /*
+     * <pre>
+     * API : Cache statistics
+     * </pre>
+     * @return ResponseEntity<Map<String, Map<String, Object>>> : hit, miss and eviction counters per cache
+     */
+    @GetMapping("/cache/statistics")
+    public ResponseEntity<Map<String, Map<String, Object>>> getCacheStatistics() {
+        return ResponseEntity.ok().body(cacheStatisticsService.getStatistics());
+    }
+
      /*
      * <pre>
      * API : Assign role to employee
@@ -0,0 +1,33 @@
+package jp.co.apidemo.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/*
+ * <pre>
+ * Headcount and salary statistics of one department
+ * Filled by group by query or by DepartmentAggregateCache, department is null for employees without department
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+public class DepartmentAggregate implements Serializable {
+    private String department;
+    private Long headcount;
+    private Long salarySum;
+    private Double salaryAvg;
+    private Integer salaryMin;
+    private Integer salaryMax;
+
+    // Average is derived from sum, database avg of an integer column may be truncated
+    public DepartmentAggregate(String department, Long headcount, Long salarySum, Integer salaryMin, Integer salaryMax) {
+        this.department = department;
+        this.headcount = headcount;
+        this.salarySum = salarySum;
+        this.salaryAvg = headcount == 0 ? null : (double) salarySum / headcount;
+        this.salaryMin = salaryMin;
+        this.salaryMax = salaryMax;
+    }
+}
@@ -1,14 +1,26 @@
 package jp.co.apidemo.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.SQLDelete;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -22,15 +34,30 @@ import static javax.persistence.FetchType.*;
 @Builder
 
 @Entity 
+// Updates write only changed columns (and version), a salary change does not rewrite name or password
+@DynamicUpdate
+@NamedEntityGraph(name = Employee.WITH_ROLES, attributeNodes = @NamedAttributeNode("roles"))
+// Soft delete : a deleted employee stays as tombstone for incremental sync, queries and loads see live employees only
+// TOMBSTONE (unmapped, 0 while live) takes the id, so the name of a deleted employee can be used again
+@SQLDelete(sql = "update employee set deleted_at = current_timestamp, updated_at = current_timestamp, tombstone = id"
+    + " where id = ? and version = ?")
+@Where(clause = "deleted_at is null")
 public class Employee implements Serializable{
+
+    // Fetch plan for views that need roles (authentication, detail), list views leave roles unloaded
+    public static final String WITH_ROLES = "Employee.roles";
     
+    // Pooled sequence : ids are reserved in blocks, so inserts can be JDBC batched
     @Id
-    @GeneratedValue(strategy= GenerationType.IDENTITY)
+    @GeneratedValue(strategy= GenerationType.SEQUENCE, generator = "employee_seq")
+    @SequenceGenerator(name = "employee_seq", sequenceName = "employee_seq", allocationSize = 50)
     private Long id;
 
 
-    @Column(name="EMPLOYEE_NAME", nullable = false, unique = true, length = 100)
+    // Unique among live employees only : unique (employee_name, tombstone), see V5 migration
+    @Column(name="EMPLOYEE_NAME", nullable = false, length = 100)
     @Pattern(regexp="^[A-Za-z]*$",message = "Employee name must contain only letters")
+    @Size(max = 100, message = "Employee name must be at most 100 characters")
     private String name;
 
 
@@ -40,19 +67,54 @@ public class Employee implements Serializable{
     
     @Column(name="DEPARTMENT")
     @Pattern(regexp="^[A-Za-z]*$",message = "Department name must contain only letters")
+    @Size(max = 255, message = "Department name must be at most 255 characters")
     private String department;
 
     
     @Column(name="PASSWORD")
+    @Size(max = 255, message = "Password must be at most 255 characters")
     private String password;
 
+    // Role ids per employee in second-level cache region jp.co.apidemo.entities.Employee.roles, roles from Role region
     @Column(name="ROLES")
-    @ManyToMany(fetch = EAGER)
+    @ManyToMany(fetch = LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = UnloadedFilter.class)
     @JoinTable(name ="employee_roles",
     joinColumns = @JoinColumn(name = "employee_id"),
     inverseJoinColumns = @JoinColumn(name = "role_id")
     )
     private Collection<Role> roles = new ArrayList<>();
 
+    // Incremented on every update, ETag of employee resources
+    @Version
+    @Column(name="VERSION", nullable = false)
+    private Long version;
+
+    @CreationTimestamp
+    @Column(name="CREATED_AT", updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name="UPDATED_AT")
+    private Instant updatedAt;
+
+    // Set by soft delete only
+    @Column(name="DELETED_AT", insertable = false, updatable = false)
+    private Instant deletedAt;
+
+    // Watermark of incremental sync : feed position of the last published change, written by EmployeeChangeDispatcher
+    @JsonIgnore
+    @Column(name="CHANGE_POSITION", insertable = false, updatable = false)
+    private Long changePosition;
+
+    public Employee(Long id, String name, Integer salary, String department, String password, Collection<Role> roles) {
+        this(id, name, salary, department, password, roles, null);
+    }
+
+    public Employee(Long id, String name, Integer salary, String department, String password, Collection<Role> roles, Long version) {
+        this(id, name, salary, department, password, roles, version, null, null, null, null);
+    }
+
     
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package jp.co.apidemo.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/*
+ * <pre>
+ * Outbox row of an employee write, inserted in the transaction of the write
+ * Carries the employee summary after the write (name only for deletes, role name for role assignments)
+ * position is null until the dispatcher published the change, then it is the offset of the change feed
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "employee_change")
+public class EmployeeChange implements Serializable {
+
+    public enum Type { CREATED, UPDATED, DELETED, ROLE_ADDED }
+
+    // Pooled sequence : import batches insert their changes with JDBC batching
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_change_seq")
+    @SequenceGenerator(name = "employee_change_seq", sequenceName = "employee_change_seq", allocationSize = 50)
+    @JsonIgnore
+    private Long id;
+
+    @Column(name = "FEED_POSITION")
+    private Long position;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "CHANGE_TYPE", nullable = false, length = 16)
+    private Type type;
+
+    @Column(name = "EMPLOYEE_ID", nullable = false)
+    private Long employeeId;
+
+    @Column(name = "EMPLOYEE_NAME", length = 100)
+    private String name;
+
+    @Column(name = "EMPLOYEE_SALARY")
+    private Integer salary;
+
+    @Column(name = "DEPARTMENT")
+    private String department;
+
+    @Column(name = "VERSION")
+    private Long version;
+
+    @Column(name = "ROLE_NAME")
+    private String role;
+
+    @Column(name = "CHANGED_AT", nullable = false)
+    private Instant changedAt;
+
+    public static EmployeeChange of(Type type, EmployeeSummary employee) {
+        return new EmployeeChange(null, null, type, employee.getId(), employee.getName(), employee.getSalary(),
+            employee.getDepartment(), employee.getVersion(), null, Instant.now());
+    }
+
+    public static EmployeeChange of(Type type, Employee employee) {
+        return new EmployeeChange(null, null, type, employee.getId(), employee.getName(), employee.getSalary(),
+            employee.getDepartment(), employee.getVersion(), null, Instant.now());
+    }
+
+    public static EmployeeChange roleAdded(Employee employee, String role) {
+        EmployeeChange change = of(Type.ROLE_ADDED, employee);
+        change.setRole(role);
+        return change;
+    }
+
+    public static EmployeeChange deleted(Employee employee) {
+        return new EmployeeChange(null, null, Type.DELETED, employee.getId(), employee.getName(), null, null,
+            employee.getVersion(), null, Instant.now());
+    }
+}
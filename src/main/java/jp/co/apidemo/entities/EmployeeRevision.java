@@ -0,0 +1,56 @@
+package jp.co.apidemo.entities;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/*
+ * <pre>
+ * Current state of a changed employee row for incremental sync
+ * Read only view of the employee table without the soft delete restriction of Employee,
+ * deletedAt is set for tombstones of deleted employees
+ * position is the watermark of the row, password and roles are never exposed
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Immutable
+@Table(name = "employee")
+public class EmployeeRevision implements Serializable {
+
+    @Id
+    private Long id;
+
+    @Column(name = "EMPLOYEE_NAME")
+    private String name;
+
+    @Column(name = "EMPLOYEE_SALARY")
+    private Integer salary;
+
+    @Column(name = "DEPARTMENT")
+    private String department;
+
+    @Column(name = "VERSION")
+    private Long version;
+
+    @Column(name = "CREATED_AT")
+    private Instant createdAt;
+
+    @Column(name = "UPDATED_AT")
+    private Instant updatedAt;
+
+    @Column(name = "DELETED_AT")
+    private Instant deletedAt;
+
+    @Column(name = "CHANGE_POSITION")
+    private Long position;
+}
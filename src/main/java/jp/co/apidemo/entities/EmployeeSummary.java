@@ -0,0 +1,25 @@
+package jp.co.apidemo.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/*
+ * <pre>
+ * Read model of employee for list and detail views
+ * Filled by constructor projection, only id, name, salary, department and version columns are selected
+ * Not managed by persistence context (no dirty check snapshot), password and roles are never exposed
+ * </pre>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmployeeSummary implements Serializable {
+    private Long id;
+    private String name;
+    private Integer salary;
+    private String department;
+    private Long version;
+}
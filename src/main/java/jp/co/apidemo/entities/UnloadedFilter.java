@@ -0,0 +1,22 @@
+package jp.co.apidemo.entities;
+
+import org.hibernate.Hibernate;
+
+/*
+ * <pre>
+ * Jackson value filter for lazy associations
+ * Association is left out of json when it was not loaded, serialization never triggers a select
+ * </pre>
+ */
+public class UnloadedFilter {
+
+    @Override
+    public boolean equals(Object value) {
+        return value != null && !Hibernate.isInitialized(value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+}
@@ -0,0 +1,21 @@
+package jp.co.apidemo.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/*
+ * <pre>
+ * Request parameter out of its supported range (400 Bad Request)
+ * </pre>
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class EmployeeBadRequestException extends EmployeeServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EmployeeBadRequestException(String message)
+    {
+        super(message);
+    }
+
+}
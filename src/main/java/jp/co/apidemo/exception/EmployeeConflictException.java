@@ -0,0 +1,21 @@
+package jp.co.apidemo.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/*
+ * <pre>
+ * Update based on a stale version of employee (409 Conflict)
+ * </pre>
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class EmployeeConflictException extends EmployeeServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EmployeeConflictException(String message)
+    {
+        super(message);
+    }
+
+}
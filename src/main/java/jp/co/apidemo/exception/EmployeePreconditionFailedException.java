@@ -0,0 +1,21 @@
+package jp.co.apidemo.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/*
+ * <pre>
+ * If-Match header does not match current ETag of employee (412 Precondition Failed)
+ * </pre>
+ */
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class EmployeePreconditionFailedException extends EmployeeServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EmployeePreconditionFailedException(String message)
+    {
+        super(message);
+    }
+
+}
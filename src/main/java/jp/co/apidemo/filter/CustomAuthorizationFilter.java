@@ -1,34 +1,48 @@
 package jp.co.apidemo.filter;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
 
+import jp.co.apidemo.service.RoleAuthorities;
+import jp.co.apidemo.service.TokenService;
+
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 
-import static java.util.Arrays.stream;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.FORBIDDEN;
-import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON_VALUE;
 
 
 @Slf4j
 public class CustomAuthorizationFilter extends OncePerRequestFilter {
+
+    private static final int DEFAULT_TOKEN_CACHE_SIZE = 10000;
+
+    private final TokenService tokenService;
+    private final VerifiedTokenCache verifiedTokens;
+
+    public CustomAuthorizationFilter(TokenService tokenService) {
+        this(tokenService, DEFAULT_TOKEN_CACHE_SIZE);
+    }
+
+    public CustomAuthorizationFilter(TokenService tokenService, int tokenCacheSize) {
+        this.tokenService = tokenService;
+        this.verifiedTokens = new VerifiedTokenCache(tokenCacheSize);
+    }
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         if(request.getServletPath().equals("/api/v1/login") || request.getServletPath().equals("/api/v1/token/refresh")) {
@@ -38,17 +52,12 @@ public class CustomAuthorizationFilter extends OncePerRequestFilter {
             if(authorizationHeader != null && authorizationHeader.startsWith("employee")) {
                 try {
                     String token = authorizationHeader.substring("employee ".length());
-                    Algorithm algorithm = Algorithm.HMAC256("secret".getBytes());
-                    JWTVerifier verifier = JWT.require(algorithm).build();
-                    DecodedJWT decodedJWT = verifier.verify(token);
-                    String username = decodedJWT.getSubject();
-                    String[] roles = decodedJWT.getClaim("roles").asArray(String.class);
-                    Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
-                    stream(roles).forEach(role -> {
-                        authorities.add(new SimpleGrantedAuthority(role));
-                    });
+                    VerifiedTokenCache.VerifiedToken verified = verifiedTokens.get(token);
+                    if (verified == null) {
+                        verified = verify(token);
+                    }
                     UsernamePasswordAuthenticationToken authenticationToken =
-                        new UsernamePasswordAuthenticationToken(username, null, authorities);
+                        new UsernamePasswordAuthenticationToken(verified.getUsername(), null, verified.getAuthorities());
                     SecurityContextHolder.getContext().setAuthentication(authenticationToken);
                     filterChain.doFilter(request, response);
                 }catch (Exception exception) {
@@ -58,12 +67,26 @@ public class CustomAuthorizationFilter extends OncePerRequestFilter {
                     //response.sendError(FORBIDDEN.value());
                     Map<String, String> error = new HashMap<>();
                     error.put("error_message", exception.getMessage());
-                    response.setContentType(APPLICATION_JSON_VALUE);
-                    new ObjectMapper().writeValue(response.getOutputStream(), error);
+                    tokenService.writeResponse(response, error);
                 }
             } else {
                 filterChain.doFilter(request, response);
             }
         }
     }
-}
\ No newline at end of file
+
+    // Full signature check and claim decoding, result is cached until the token expires
+    private VerifiedTokenCache.VerifiedToken verify(String token) {
+        DecodedJWT decodedJWT = tokenService.verify(token);
+        String username = decodedJWT.getSubject();
+        String[] roles = decodedJWT.getClaim("roles").asArray(String.class);
+        Collection<SimpleGrantedAuthority> authorities = Collections.unmodifiableList(RoleAuthorities.of(Arrays.asList(roles)));
+        Date expiresAt = decodedJWT.getExpiresAt();
+        VerifiedTokenCache.VerifiedToken verified = new VerifiedTokenCache.VerifiedToken(
+            username, authorities, expiresAt == null ? 0L : expiresAt.getTime());
+        if (expiresAt != null) {
+            verifiedTokens.put(token, verified);
+        }
+        return verified;
+    }
+}
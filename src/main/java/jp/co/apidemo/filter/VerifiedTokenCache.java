@@ -0,0 +1,93 @@
+package jp.co.apidemo.filter;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * <pre>
+ * Bounded cache of already verified access tokens
+ * Entry is keyed by the exact token string and expires at the token exp claim
+ * When full, expired entries are purged first and new tokens are not cached if no room is left
+ * </pre>
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final Map<String, VerifiedToken> tokens = new ConcurrentHashMap<>();
+
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /*
+     * <pre>
+     * Fetch verified token
+     * </pre>
+     * @param String token : Raw bearer token
+     * @return VerifiedToken : Decoded principal and authorities, null if not cached or expired
+     */
+    public VerifiedToken get(String token) {
+        VerifiedToken verified = tokens.get(token);
+        if (verified == null) {
+            return null;
+        }
+        if (verified.isExpired(System.currentTimeMillis())) {
+            tokens.remove(token, verified);
+            return null;
+        }
+        return verified;
+    }
+
+    /*
+     * <pre>
+     * Add verified token
+     * </pre>
+     * @param String token : Raw bearer token
+     * @param VerifiedToken verified : Decoded principal and authorities
+     */
+    public void put(String token, VerifiedToken verified) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (tokens.size() >= maxSize) {
+            purgeExpired();
+            if (tokens.size() >= maxSize) {
+                return;
+            }
+        }
+        tokens.put(token, verified);
+    }
+
+    public int size() {
+        return tokens.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<VerifiedToken> iterator = tokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class VerifiedToken {
+        private final String username;
+        private final Collection<SimpleGrantedAuthority> authorities;
+        private final long expiresAt;
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package jp.co.apidemo.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jp.co.apidemo.entities.EmployeeChange;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+@Transactional(readOnly = true)
+public interface EmployeeChangeRepository extends JpaRepository<EmployeeChange, Long> {
+
+    // Dispatcher : unpublished changes in insert order
+    @Query("select c from EmployeeChange c where c.position is null order by c.id")
+    List<EmployeeChange> findUnpublished(Pageable pageable);
+
+    @Query("select coalesce(max(c.position), 0) from EmployeeChange c")
+    long findLastPosition();
+
+    // Change feed : published changes after a resume offset
+    @Query("select c from EmployeeChange c where c.position > :after order by c.position")
+    List<EmployeeChange> findPublishedAfter(@Param("after") long after, Pageable pageable);
+
+    // The last published change is always kept : next positions continue after it, never restart below a consumer offset
+    @Transactional
+    @Modifying
+    @Query("delete from EmployeeChange c where c.position is not null and c.changedAt < :before"
+        + " and c.position < (select max(l.position) from EmployeeChange l)")
+    int deletePublishedBefore(@Param("before") Instant before);
+}
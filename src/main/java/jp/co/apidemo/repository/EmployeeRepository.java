@@ -1,17 +1,161 @@
 package jp.co.apidemo.repository;
 
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import jp.co.apidemo.entities.DepartmentAggregate;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeSummary;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+// Query methods run read only (routed to a replica when configured), writes declare read write transactions
 @Repository
+@Transactional(readOnly = true)
 public interface EmployeeRepository extends JpaRepository<Employee, Long> {
     Page<Employee> findByNameContaining(String name, Pageable pagingSort);
+
+    // Single employee lookups (detail, authentication, role assignment) load roles in the same select
+    @EntityGraph(Employee.WITH_ROLES)
     Optional<Employee> findById(Long employeeId);
+    @EntityGraph(Employee.WITH_ROLES)
     Employee findByName(String name);
+
+    // Export cursor : rows are fetched from the driver in blocks, entities are read only (no dirty check snapshot)
+    String EXPORT_FETCH_SIZE = "500";
+
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+        @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @EntityGraph(Employee.WITH_ROLES)
+    @Query("select e from Employee e order by e.id")
+    Stream<Employee> streamAll();
+
+    // Partial update (PATCH) : employee columns only, roles stay unloaded
+    Optional<Employee> findWithoutRolesById(Long employeeId);
+
+    @Query("select e.name from Employee e where e.name in :names")
+    List<String> findExistingNames(@Param("names") Collection<String> names);
+
+    // List and detail views select only summary columns
+    String SUMMARY = "select new jp.co.apidemo.entities.EmployeeSummary(e.id, e.name, e.salary, e.department, e.version) from Employee e";
+
+    @Query(SUMMARY + " where e.id = :id")
+    Optional<EmployeeSummary> findSummaryById(@Param("id") Long id);
+
+    @Query(SUMMARY + " where e.id in :ids")
+    List<EmployeeSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Conditional update (If-Match) : single statement, 0 rows when version changed or employee was deleted
+    // A null password keeps the stored hash, roles are not touched
+    @Transactional
+    @Modifying
+    @Query("update Employee e set e.name = :name, e.salary = :salary, e.department = :department,"
+        + " e.password = coalesce(:password, e.password), e.version = e.version + 1, e.updatedAt = current_timestamp"
+        + " where e.id = :id and e.version = :version and e.deletedAt is null")
+    int updateIfVersion(@Param("id") Long id, @Param("version") Long version, @Param("name") String name,
+                        @Param("salary") Integer salary, @Param("department") String department,
+                        @Param("password") String password);
+
+    // Dispatcher stamps the watermark of a published change, version (ETag) is not incremented
+    @Transactional
+    @Modifying
+    @Query("update Employee e set e.changePosition = :position where e.id = :id")
+    int markChanged(@Param("id") Long id, @Param("position") long position);
+
+    // Department and salary range filters of listing, each one is skipped when null
+    String RANGE_FILTER = "(:department is null or e.department = :department)"
+        + " and (:minSalary is null or e.salary >= :minSalary) and (:maxSalary is null or e.salary <= :maxSalary)";
+
+    // Name search resolved by EmployeeSearchIndex : ids replace the like filter
+    @Query(SUMMARY + " where e.id in :ids and " + RANGE_FILTER)
+    Slice<EmployeeSummary> findSliceByIdIn(@Param("ids") Collection<Long> ids, @Param("department") String department,
+                                           @Param("minSalary") Integer minSalary, @Param("maxSalary") Integer maxSalary,
+                                           Pageable pageable);
+
+    // Key holds the ids resolved by the index (at most max-ids), evicted with the other totals on every write
+    @Cacheable(cacheNames = "employeeCount", key = "{#p0, #p1, #p2, #p3}", unless = LAGGING_READ)
+    @Query("select count(e) from Employee e where e.id in :ids and " + RANGE_FILTER)
+    long countByIdIn(@Param("ids") Collection<Long> ids, @Param("department") String department,
+                     @Param("minSalary") Integer minSalary, @Param("maxSalary") Integer maxSalary);
+
+    // Search index load
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+        @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query(SUMMARY)
+    Stream<EmployeeSummary> streamSummaries();
+
+    String LAGGING_READ = "T(jp.co.apidemo.config.ReplicaRoutingDataSource).isLaggingRead()";
+
+    // Keyset (seek) queries : order comes from pageable sort, Slice return type skips the count query
+    String NAME_FILTER = "(:name is null or e.name like concat('%', :name, '%'))";
+
+    @Query(SUMMARY + " where " + NAME_FILTER)
+    Slice<EmployeeSummary> findFirstSlice(@Param("name") String name, Pageable pageable);
+
+    // Total count per name filter, cached until an employee is saved, updated or deleted
+    // Not cached when read from a replica that may miss a recent write
+    @Cacheable(cacheNames = "employeeCount", key = "#p0 ?: ''", unless = LAGGING_READ)
+    @Query("select count(e) from Employee e where " + NAME_FILTER)
+    long countByNameFilter(@Param("name") String name);
+
+    @Query(SUMMARY + " where " + NAME_FILTER + " and " + RANGE_FILTER)
+    Slice<EmployeeSummary> findFilteredSlice(@Param("name") String name, @Param("department") String department,
+                                             @Param("minSalary") Integer minSalary, @Param("maxSalary") Integer maxSalary,
+                                             Pageable pageable);
+
+    @Cacheable(cacheNames = "employeeCount", key = "{#p0, #p1, #p2, #p3}", unless = LAGGING_READ)
+    @Query("select count(e) from Employee e where " + NAME_FILTER + " and " + RANGE_FILTER)
+    long countByFilter(@Param("name") String name, @Param("department") String department,
+                       @Param("minSalary") Integer minSalary, @Param("maxSalary") Integer maxSalary);
+
+    // Dashboard aggregates
+    @Query("select new jp.co.apidemo.entities.DepartmentAggregate(e.department, count(e), sum(e.salary),"
+        + " min(e.salary), max(e.salary)) from Employee e group by e.department")
+    List<DepartmentAggregate> aggregateByDepartment();
+
+    // Salary histogram per department (department, salary, headcount), loads DepartmentAggregateCache
+    @Query("select e.department, e.salary, count(e) from Employee e group by e.department, e.salary")
+    List<Object[]> countBySalaryPerDepartment();
+
+    @Query(SUMMARY + " where " + NAME_FILTER + " and e.id > :id")
+    Slice<EmployeeSummary> seekByIdAfter(@Param("name") String name, @Param("id") Long id, Pageable pageable);
+
+    @Query(SUMMARY + " where " + NAME_FILTER + " and e.id < :id")
+    Slice<EmployeeSummary> seekByIdBefore(@Param("name") String name, @Param("id") Long id, Pageable pageable);
+
+    @Query(SUMMARY + " where " + NAME_FILTER + " and e.name > :lastName")
+    Slice<EmployeeSummary> seekByNameAfter(@Param("name") String name, @Param("lastName") String lastName, Pageable pageable);
+
+    @Query(SUMMARY + " where " + NAME_FILTER + " and e.name < :lastName")
+    Slice<EmployeeSummary> seekByNameBefore(@Param("name") String name, @Param("lastName") String lastName, Pageable pageable);
+
+    // Leading salary bound gives the (salary, id) index a range start, the or only filters rows of the last salary
+    @Query(SUMMARY + " where " + NAME_FILTER
+        + " and e.salary >= :salary and (e.salary > :salary or (e.salary = :salary and e.id > :id))")
+    Slice<EmployeeSummary> seekBySalaryAfter(@Param("name") String name, @Param("salary") Integer salary, @Param("id") Long id, Pageable pageable);
+
+    @Query(SUMMARY + " where " + NAME_FILTER
+        + " and e.salary <= :salary and (e.salary < :salary or (e.salary = :salary and e.id < :id))")
+    Slice<EmployeeSummary> seekBySalaryBefore(@Param("name") String name, @Param("salary") Integer salary, @Param("id") Long id, Pageable pageable);
 }
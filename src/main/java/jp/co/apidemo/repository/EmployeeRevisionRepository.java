@@ -0,0 +1,26 @@
+package jp.co.apidemo.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import jp.co.apidemo.entities.EmployeeRevision;
+
+import java.util.List;
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+@Repository
+@Transactional(readOnly = true)
+public interface EmployeeRevisionRepository extends JpaRepository<EmployeeRevision, Long> {
+
+    // Incremental sync : rows changed after a watermark in watermark order (idx_employee_change_position), tombstones included
+    @QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+    @Query("select r from EmployeeRevision r where r.position > :after order by r.position")
+    List<EmployeeRevision> findChangedAfter(@Param("after") long after, Pageable pageable);
+}
@@ -1,11 +1,20 @@
 package jp.co.apidemo.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import jp.co.apidemo.entities.Role;
 
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+
 @Repository
+@Transactional(readOnly = true)
 public interface RoleRepository extends JpaRepository<Role, Long> {
+    // Query cache : role ids by name, invalidated by any write to the role table
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     Role findByName(String name);
 }
@@ -0,0 +1,80 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.cache.CacheManager;
+import javax.cache.management.CacheStatisticsMXBean;
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * <pre>
+ * Per cache hit, miss and eviction counters
+ * Read from the JCache statistics MXBean registered for every cache of the application cache manager
+ * </pre>
+ */
+@Service
+@Slf4j
+public class CacheStatisticsService {
+
+    private final CacheManager jCacheManager;
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    @Autowired
+    public CacheStatisticsService(CacheManager jCacheManager) {
+        this.jCacheManager = jCacheManager;
+    }
+
+    /*
+     * <pre>
+     * Fetch statistics of all caches
+     * </pre>
+     * @return Map<String, Map<String, Object>> : Cache name to statistics (hits, misses, evictions, gets, puts, hitPercentage)
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+        for (String cacheName : jCacheManager.getCacheNames()) {
+            CacheStatisticsMXBean bean = statisticsBean(cacheName);
+            if (bean == null) {
+                continue;
+            }
+            Map<String, Object> cacheStatistics = new LinkedHashMap<>();
+            cacheStatistics.put("hits", bean.getCacheHits());
+            cacheStatistics.put("misses", bean.getCacheMisses());
+            cacheStatistics.put("evictions", bean.getCacheEvictions());
+            cacheStatistics.put("gets", bean.getCacheGets());
+            cacheStatistics.put("puts", bean.getCachePuts());
+            cacheStatistics.put("hitPercentage", bean.getCacheHitPercentage());
+            statistics.put(cacheName, cacheStatistics);
+        }
+        return statistics;
+    }
+
+    private CacheStatisticsMXBean statisticsBean(String cacheName) {
+        try {
+            ObjectName name = new ObjectName("javax.cache:type=CacheStatistics"
+                + ",CacheManager=" + sanitize(jCacheManager.getURI().toString())
+                + ",Cache=" + sanitize(cacheName));
+            if (!mBeanServer.isRegistered(name)) {
+                log.info("Statistics not enabled for cache {}", cacheName);
+                return null;
+            }
+            return JMX.newMXBeanProxy(mBeanServer, name, CacheStatisticsMXBean.class);
+        } catch (MalformedObjectNameException e) {
+            log.error("Invalid statistics name for cache {}: {}", cacheName, e.getMessage());
+            return null;
+        }
+    }
+
+    // Same escaping as the JCache provider uses for its MXBean names
+    private static String sanitize(String value) {
+        return value == null ? "" : value.replaceAll(",|:|=|\n", ".");
+    }
+}
@@ -0,0 +1,150 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.entities.DepartmentAggregate;
+import jp.co.apidemo.repository.EmployeeRepository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/*
+ * <pre>
+ * In-memory headcount and salary statistics per department
+ * Holds a salary histogram per department, so min and max stay exact when employees are removed
+ * Loaded from a group by query when application is ready, then maintained by save, update, delete and import
+ * </pre>
+ */
+@Service
+@Slf4j
+public class DepartmentAggregateCache {
+
+    private static final Comparator<String> DEPARTMENT_ORDER = Comparator.nullsLast(Comparator.naturalOrder());
+
+    private final EmployeeRepository employeeRepository;
+    private final Map<String, SalaryHistogram> departments = new HashMap<>();
+    private volatile boolean ready;
+
+    @Autowired
+    public DepartmentAggregateCache(EmployeeRepository employeeRepository) {
+        this.employeeRepository = employeeRepository;
+    }
+
+    /*
+     * <pre>
+     * Load statistics from database
+     * Aggregates are not served from cache until load completed
+     * </pre>
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        departments.clear();
+        for (Object[] row : employeeRepository.countBySalaryPerDepartment()) {
+            departments.computeIfAbsent((String) row[0], key -> new SalaryHistogram())
+                .add((Integer) row[1], ((Number) row[2]).longValue());
+        }
+        ready = true;
+        log.info("rebuild: Aggregates of {} departments loaded", departments.size());
+    }
+
+    /*
+     * <pre>
+     * Count new employee
+     * </pre>
+     * @param String department : Department of employee, may be null
+     * @param Integer salary : Salary of employee
+     */
+    public synchronized void add(String department, Integer salary) {
+        if (salary != null) {
+            departments.computeIfAbsent(department, key -> new SalaryHistogram()).add(salary, 1);
+        }
+    }
+
+    /*
+     * <pre>
+     * Uncount removed employee
+     * </pre>
+     * @param String department : Department of employee, may be null
+     * @param Integer salary : Salary of employee
+     */
+    public synchronized void remove(String department, Integer salary) {
+        SalaryHistogram histogram = departments.get(department);
+        if (histogram != null && salary != null) {
+            histogram.add(salary, -1);
+            if (histogram.headcount == 0) {
+                departments.remove(department);
+            }
+        }
+    }
+
+    /*
+     * <pre>
+     * Move updated employee between departments and salaries
+     * </pre>
+     * @param String oldDepartment : Department before update
+     * @param Integer oldSalary : Salary before update
+     * @param String department : Department after update
+     * @param Integer salary : Salary after update
+     */
+    public synchronized void update(String oldDepartment, Integer oldSalary, String department, Integer salary) {
+        if (Objects.equals(oldDepartment, department) && Objects.equals(oldSalary, salary)) {
+            return;
+        }
+        remove(oldDepartment, oldSalary);
+        add(department, salary);
+    }
+
+    /*
+     * <pre>
+     * Statistics of all departments
+     * </pre>
+     * @return List<DepartmentAggregate> : One entry per department ordered by name (no department last),
+     *                                     null if cache is not loaded yet
+     */
+    public synchronized List<DepartmentAggregate> getAggregates() {
+        if (!ready) {
+            return null;
+        }
+        List<DepartmentAggregate> aggregates = new ArrayList<>(departments.size());
+        for (Map.Entry<String, SalaryHistogram> entry : departments.entrySet()) {
+            aggregates.add(entry.getValue().toAggregate(entry.getKey()));
+        }
+        aggregates.sort(Comparator.comparing(DepartmentAggregate::getDepartment, DEPARTMENT_ORDER));
+        return aggregates;
+    }
+
+    // Headcount per salary, headcount and sum kept as running totals
+    private static final class SalaryHistogram {
+        private final TreeMap<Integer, Long> counts = new TreeMap<>();
+        private long headcount;
+        private long sum;
+
+        void add(int salary, long count) {
+            Long current = counts.get(salary);
+            long updated = (current == null ? 0 : current) + count;
+            if (updated < 0) {
+                return;
+            }
+            if (updated == 0) {
+                counts.remove(salary);
+            } else {
+                counts.put(salary, updated);
+            }
+            headcount += count;
+            sum += salary * count;
+        }
+
+        DepartmentAggregate toAggregate(String department) {
+            return new DepartmentAggregate(department, headcount, sum, counts.firstKey(), counts.lastKey());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package jp.co.apidemo.service;
+
+import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeSummary;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public interface EmployeeAsyncService {
+
+    /*
+     * <pre>
+     * Fetch single employee on database executor
+     * </pre>
+     * @param Long employeeId : Employee Id
+     * @exception RejectedExecutionException : If database executor is saturated
+     * @return CompletableFuture<EmployeeSummary> : Completed with employee summary
+     */
+    public CompletableFuture<EmployeeSummary> getEmployee(Long employeeId);
+
+    /*
+     * <pre>
+     * Fetch employee page on database executor
+     * </pre>
+     * @param String name : Employee name
+     * @param String department : Department, null for all
+     * @param Integer minSalary : Lowest salary, null for no limit
+     * @param Integer maxSalary : Highest salary, null for no limit
+     * @param int page : page parameter
+     * @param int size : page size limit
+     * @param String[] sort : sorting criteria,sorting order
+     * @param boolean withTotal : true to count total items and pages
+     * @exception RejectedExecutionException : If database executor is saturated
+     * @return CompletableFuture<Map<String,Object>> : Completed with employees and paging metadata
+     */
+    public CompletableFuture<Map<String, Object>> retrieveEmployees(String name, String department, Integer minSalary,
+                                                                    Integer maxSalary, int page, int size, String[] sort,
+                                                                    boolean withTotal);
+
+    /*
+     * <pre>
+     * Add employee : password is encoded on hashing executor, then inserted on database executor
+     * </pre>
+     * @param Employee employee : Employee entity
+     * @exception RejectedExecutionException : If hashing or database executor is saturated
+     * @return CompletableFuture<Employee> : Completed with database saved entity
+     */
+    public CompletableFuture<Employee> saveEmployee(Employee employee);
+
+    /*
+     * <pre>
+     * Pool figures of database, hashing and stream executors
+     * </pre>
+     * @return Map<String, Map<String, Object>> : Executor name to statistics
+     */
+    public Map<String, Map<String, Object>> getExecutorStatistics();
+}
@@ -0,0 +1,77 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.config.AsyncConfig;
+import jp.co.apidemo.config.BoundedExecutor;
+import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeSummary;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * <pre>
+ * Employee operations off the servlet thread
+ * Database work runs on the database executor, password hashing on the hashing executor
+ * Both executors reject at once when their queue is full, the caller answers 503
+ * Statistics also cover the stream executor, which delivers change streams (EmployeeChangeServiceImpl)
+ * </pre>
+ */
+@Service
+@Slf4j
+public class EmployeeAsyncServiceImpl implements EmployeeAsyncService {
+
+    private final EmployeeService employeeService;
+    private final PasswordEncoder passwordEncoder;
+    private final BoundedExecutor databaseExecutor;
+    private final BoundedExecutor hashingExecutor;
+    private final BoundedExecutor streamExecutor;
+
+    @Autowired
+    public EmployeeAsyncServiceImpl(EmployeeService employeeService, PasswordEncoder passwordEncoder,
+                                    @Qualifier("databaseExecutor") BoundedExecutor databaseExecutor,
+                                    @Qualifier("hashingExecutor") BoundedExecutor hashingExecutor,
+                                    @Qualifier("streamExecutor") BoundedExecutor streamExecutor) {
+        this.employeeService = employeeService;
+        this.passwordEncoder = passwordEncoder;
+        this.databaseExecutor = databaseExecutor;
+        this.hashingExecutor = hashingExecutor;
+        this.streamExecutor = streamExecutor;
+    }
+
+    @Override
+    public CompletableFuture<EmployeeSummary> getEmployee(Long employeeId) {
+        return CompletableFuture.supplyAsync(() -> employeeService.getEmployee(employeeId), databaseExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> retrieveEmployees(String name, String department, Integer minSalary,
+                                                                    Integer maxSalary, int page, int size, String[] sort,
+                                                                    boolean withTotal) {
+        return CompletableFuture.supplyAsync(() -> employeeService.retrieveEmployees(name, department, minSalary,
+            maxSalary, page, size, sort, withTotal), databaseExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Employee> saveEmployee(Employee employee) {
+        return CompletableFuture.supplyAsync(() -> {
+            employee.setPassword(passwordEncoder.encode(employee.getPassword()));
+            return employee;
+        }, hashingExecutor).thenApplyAsync(employeeService::saveEncodedEmployee, databaseExecutor);
+    }
+
+    @Override
+    public Map<String, Map<String, Object>> getExecutorStatistics() {
+        Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+        statistics.put(AsyncConfig.DATABASE_EXECUTOR, databaseExecutor.getStatistics());
+        statistics.put(AsyncConfig.HASHING_EXECUTOR, hashingExecutor.getStatistics());
+        statistics.put(AsyncConfig.STREAM_EXECUTOR, streamExecutor.getStatistics());
+        return statistics;
+    }
+}
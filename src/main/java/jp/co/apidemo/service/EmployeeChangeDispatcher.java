@@ -0,0 +1,125 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.repository.EmployeeChangeRepository;
+import jp.co.apidemo.repository.EmployeeRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/*
+ * <pre>
+ * Outbox dispatcher : polls unpublished employee changes, numbers them with feed positions in batches
+ * and hands them to in-process subscribers once the positions are committed
+ * Positions are taken after the last committed one, a second dispatcher on the same database
+ * fails on the unique position and retries on its next poll
+ * The employee row takes the position of its last change in the batch, watermark of "changed since" queries
+ * Subscribers run on the dispatcher thread in position order, a failing subscriber does not stop the others
+ * </pre>
+ */
+@Service
+@Slf4j
+@EnableScheduling
+public class EmployeeChangeDispatcher {
+
+    private final EmployeeChangeRepository changeRepository;
+    private final EmployeeRepository employeeRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration retention;
+    private final List<Consumer<EmployeeChange>> subscribers = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public EmployeeChangeDispatcher(EmployeeChangeRepository changeRepository, EmployeeRepository employeeRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${app.outbox.batch-size:500}") int batchSize,
+                                    @Value("${app.outbox.retention-days:7}") int retentionDays) {
+        this.changeRepository = changeRepository;
+        this.employeeRepository = employeeRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.retention = Duration.ofDays(retentionDays);
+    }
+
+    /*
+     * <pre>
+     * Receive every change published from now on
+     * </pre>
+     * @param Consumer<EmployeeChange> subscriber : Called once per change, in feed position order
+     * @return Runnable : Cancels the subscription
+     */
+    public Runnable subscribe(Consumer<EmployeeChange> subscriber) {
+        subscribers.add(subscriber);
+        return () -> subscribers.remove(subscriber);
+    }
+
+    /*
+     * <pre>
+     * Publish pending changes, batch after batch until the outbox is drained
+     * </pre>
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-delay-millis:200}")
+    public void dispatch() {
+        List<EmployeeChange> published;
+        do {
+            published = transactionTemplate.execute(status -> assignPositions());
+            for (EmployeeChange change : published) {
+                publish(change);
+            }
+        } while (published.size() == batchSize);
+    }
+
+    // Positions are written by dirty checking when the transaction commits, watermarks in the same transaction
+    private List<EmployeeChange> assignPositions() {
+        List<EmployeeChange> changes = changeRepository.findUnpublished(PageRequest.of(0, batchSize));
+        if (!changes.isEmpty()) {
+            long position = changeRepository.findLastPosition();
+            Map<Long, Long> watermarks = new LinkedHashMap<>();
+            for (EmployeeChange change : changes) {
+                change.setPosition(++position);
+                watermarks.put(change.getEmployeeId(), position);
+            }
+            watermarks.forEach(employeeRepository::markChanged);
+        }
+        return changes;
+    }
+
+    private void publish(EmployeeChange change) {
+        for (Consumer<EmployeeChange> subscriber : subscribers) {
+            try {
+                subscriber.accept(change);
+            } catch (RuntimeException e) {
+                log.warn("publish: Subscriber failed on change {}: {}", change.getPosition(), e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * <pre>
+     * Delete published changes older than retention, consumers must resume within retention
+     * The last published change outlives retention, it holds the position the next batch continues from
+     * </pre>
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.prune-delay-millis:3600000}")
+    public void prune() {
+        int deleted = changeRepository.deletePublishedBefore(Instant.now().minus(retention));
+        if (deleted > 0) {
+            log.info("prune: {} published changes deleted", deleted);
+        }
+    }
+}
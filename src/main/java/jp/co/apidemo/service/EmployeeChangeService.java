@@ -0,0 +1,57 @@
+package jp.co.apidemo.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jp.co.apidemo.entities.EmployeeChange;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface EmployeeChangeService {
+
+    // Upper bound of one feed page
+    public static final int FEED_MAX_LIMIT = 1000;
+
+    /*
+     * <pre>
+     * Published employee changes after a resume offset
+     * </pre>
+     * @param long after : Feed position of the last change already read, 0 for the start of the feed
+     * @param int limit : Maximum number of changes, at most FEED_MAX_LIMIT
+     * @exception EmployeeServiceException : If limit is out of range
+     * @return Map<String,Object> : changes in feed order and next (offset to resume from)
+     */
+    public Map<String, Object> getChanges(long after, int limit);
+
+    /*
+     * <pre>
+     * Incremental sync : current state of employees changed after a watermark, one entry per employee
+     * Deleted employees are returned as tombstones (deletedAt set), a row is returned once its change is published
+     * </pre>
+     * @param long since : Watermark returned by the previous call, 0 for every employee
+     * @param int limit : Maximum number of employees, at most FEED_MAX_LIMIT
+     * @exception EmployeeServiceException : If limit is out of range
+     * @return Map<String,Object> : employees in watermark order and next (watermark of the following call)
+     */
+    public Map<String, Object> getChangedEmployees(long since, int limit);
+
+    /*
+     * <pre>
+     * Server-Sent Events stream of employee changes
+     * Changes after the resume offset are replayed first, then published changes follow as they happen
+     * Event id is the feed position, event name the change type
+     * </pre>
+     * @param Long after : Feed position of the last change already read, null for changes from now on
+     * @return SseEmitter : Open event stream
+     */
+    public SseEmitter streamChanges(Long after);
+
+    /*
+     * <pre>
+     * In-process subscription to published employee changes
+     * </pre>
+     * @param Consumer<EmployeeChange> subscriber : Called once per change, in feed position order
+     * @return Runnable : Cancels the subscription
+     */
+    public Runnable subscribe(Consumer<EmployeeChange> subscriber);
+}
@@ -0,0 +1,259 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jp.co.apidemo.config.BoundedExecutor;
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.entities.EmployeeRevision;
+import jp.co.apidemo.exception.EmployeeServiceException;
+import jp.co.apidemo.repository.EmployeeChangeRepository;
+import jp.co.apidemo.repository.EmployeeRevisionRepository;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/*
+ * <pre>
+ * Change feed of employee writes, read from the outbox by feed position
+ * Changed employees are read from the watermark of employee rows, so a row changed many times is returned once
+ * Feed pages are read only (replica when configured), stream replay reads primary so it meets the live changes
+ * Streams are delivered on the stream executor, a slow client never holds the dispatcher
+ * </pre>
+ */
+@Service
+@Slf4j
+public class EmployeeChangeServiceImpl implements EmployeeChangeService {
+
+    private static final int REPLAY_PAGE_SIZE = 500;
+
+    private final EmployeeChangeRepository changeRepository;
+    private final EmployeeRevisionRepository revisionRepository;
+    private final EmployeeChangeDispatcher dispatcher;
+    private final TransactionTemplate primaryRead;
+    private final BoundedExecutor streamExecutor;
+    private final long streamTimeout;
+    private final int queueCapacity;
+
+    @Autowired
+    public EmployeeChangeServiceImpl(EmployeeChangeRepository changeRepository, EmployeeRevisionRepository revisionRepository,
+                                     EmployeeChangeDispatcher dispatcher,
+                                     PlatformTransactionManager transactionManager,
+                                     @Qualifier("streamExecutor") BoundedExecutor streamExecutor,
+                                     @Value("${app.outbox.stream-timeout-minutes:10}") int streamTimeoutMinutes,
+                                     @Value("${app.outbox.stream-queue-capacity:1000}") int queueCapacity) {
+        this.changeRepository = changeRepository;
+        this.revisionRepository = revisionRepository;
+        this.dispatcher = dispatcher;
+        this.primaryRead = new TransactionTemplate(transactionManager);
+        this.streamExecutor = streamExecutor;
+        this.streamTimeout = TimeUnit.MINUTES.toMillis(streamTimeoutMinutes);
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public Map<String, Object> getChanges(long after, int limit) {
+        validateLimit(limit);
+        List<EmployeeChange> changes = changeRepository.findPublishedAfter(after, PageRequest.of(0, limit));
+        Map<String, Object> response = new HashMap<>();
+        response.put("changes", changes);
+        response.put("next", changes.isEmpty() ? after : changes.get(changes.size() - 1).getPosition());
+        return response;
+    }
+
+    @Override
+    public Map<String, Object> getChangedEmployees(long since, int limit) {
+        validateLimit(limit);
+        List<EmployeeRevision> employees = revisionRepository.findChangedAfter(since, PageRequest.of(0, limit));
+        Map<String, Object> response = new HashMap<>();
+        response.put("employees", employees);
+        response.put("next", employees.isEmpty() ? since : employees.get(employees.size() - 1).getPosition());
+        return response;
+    }
+
+    private static void validateLimit(int limit) {
+        if (limit < 1 || limit > FEED_MAX_LIMIT) {
+            throw new EmployeeServiceException("limit must be between 1 and " + FEED_MAX_LIMIT);
+        }
+    }
+
+    @Override
+    public SseEmitter streamChanges(Long after) {
+        long from = after != null ? after : primaryRead.execute(status -> changeRepository.findLastPosition());
+        ChangeStream stream = new ChangeStream(from);
+        // Live first, so nothing published during replay is missed, duplicates are dropped by position
+        stream.cancel = dispatcher.subscribe(stream::onPublished);
+        stream.emitter.onCompletion(stream::onClosed);
+        stream.emitter.onTimeout(stream::onClosed);
+        stream.emitter.onError(error -> stream.onClosed());
+        return stream.emitter;
+    }
+
+    @Override
+    public Runnable subscribe(Consumer<EmployeeChange> subscriber) {
+        return dispatcher.subscribe(subscriber);
+    }
+
+    /*
+     * One SSE client
+     * The dispatcher thread only queues published changes, sends run on the stream executor, at most one task per stream
+     * Replay starts once the response is set up, so replayed pages are written to the client and not buffered
+     * Changes dropped from a full queue during replay are read again by a further replay round,
+     * a full queue after replay means the client is too slow : the stream is closed, the client resumes with Last-Event-ID
+     */
+    private class ChangeStream {
+        private final SseEmitter emitter = new SseEmitter(streamTimeout) {
+            @Override
+            protected void extendResponse(ServerHttpResponse outputMessage) {
+                super.extendResponse(outputMessage);
+                started = true;
+                schedule();
+            }
+        };
+        private final BlockingQueue<EmployeeChange> live = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Written by the delivery task only, published to the next task by scheduled
+        private long lastSent;
+        // Guarded by this, replaying is written by the delivery task
+        private boolean replaying = true;
+        private boolean missed;
+        private volatile boolean started;
+        private volatile boolean closed;
+        private volatile boolean completed;
+        private volatile Runnable cancel;
+
+        ChangeStream(long after) {
+            this.lastSent = after;
+        }
+
+        // Dispatcher thread, never waits for the client
+        void onPublished(EmployeeChange change) {
+            boolean slow = false;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (!live.offer(change)) {
+                    if (replaying) {
+                        missed = true;
+                    } else {
+                        slow = true;
+                    }
+                }
+            }
+            if (slow) {
+                log.info("streamChanges: Client {} changes behind at position {}, stream closed", queueCapacity, change.getPosition());
+                close();
+            }
+            schedule();
+        }
+
+        void onClosed() {
+            completed = true;
+            close();
+        }
+
+        private void close() {
+            closed = true;
+            Runnable subscription = cancel;
+            if (subscription != null) {
+                subscription.run();
+            }
+        }
+
+        private void schedule() {
+            if (!started || completed || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                streamExecutor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                // No delivery task runs, the emitter is not in use
+                scheduled.set(false);
+                log.info("streamChanges: Stream executor saturated, stream closed");
+                close();
+                completed = true;
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void deliver() {
+            try {
+                if (replaying && !closed) {
+                    replay();
+                }
+                EmployeeChange change;
+                while (!closed && (change = live.poll()) != null) {
+                    send(change);
+                }
+                if (closed && !completed) {
+                    completed = true;
+                    emitter.complete();
+                }
+            } catch (RuntimeException e) {
+                log.warn("streamChanges: Delivery failed: {}", e.getMessage());
+                close();
+                completed = true;
+                emitter.completeWithError(e);
+            } finally {
+                scheduled.set(false);
+            }
+            if (closed ? !completed : !live.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void replay() {
+            while (true) {
+                List<EmployeeChange> page;
+                do {
+                    long from = lastSent;
+                    page = primaryRead.execute(status -> changeRepository.findPublishedAfter(from, PageRequest.of(0, REPLAY_PAGE_SIZE)));
+                    page.forEach(this::send);
+                } while (page.size() == REPLAY_PAGE_SIZE && !closed);
+                synchronized (this) {
+                    if (!missed || closed) {
+                        replaying = false;
+                        return;
+                    }
+                    missed = false;
+                }
+            }
+        }
+
+        private void send(EmployeeChange change) {
+            if (closed || change.getPosition() <= lastSent) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                    .id(String.valueOf(change.getPosition()))
+                    .name(change.getType().name())
+                    .data(change, MediaType.APPLICATION_JSON));
+                lastSent = change.getPosition();
+            } catch (IOException | IllegalStateException e) {
+                log.info("streamChanges: Client gone at position {}: {}", lastSent, e.getMessage());
+                close();
+                completed = true;
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
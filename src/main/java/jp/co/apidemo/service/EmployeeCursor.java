@@ -0,0 +1,103 @@
+package jp.co.apidemo.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.springframework.data.domain.Sort;
+
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.exception.EmployeeServiceException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+ * <pre>
+ * Opaque keyset cursor for employee listing
+ * Holds the sort key and the id of the last row of a page, the next page seeks past it
+ * Encoded as url safe base64 of "field|direction|id|value"
+ * </pre>
+ */
+@Getter
+@AllArgsConstructor
+public class EmployeeCursor {
+
+    public static final String SORT_ID = "id";
+    public static final String SORT_NAME = "name";
+    public static final String SORT_SALARY = "salary";
+
+    private final String sortField;
+    private final Sort.Direction direction;
+    private final Long lastId;
+    private final String lastValue;
+
+    /*
+     * <pre>
+     * Build cursor pointing after the input employee
+     * </pre>
+     * @param String sortField : Keyset sort field (id/name/salary)
+     * @param Sort.Direction direction : Sorting order
+     * @param EmployeeSummary employee : Last employee of the current page
+     * @return EmployeeCursor : Cursor for next page
+     */
+    public static EmployeeCursor after(String sortField, Sort.Direction direction, EmployeeSummary employee) {
+        String value;
+        if (SORT_NAME.equals(sortField)) {
+            value = employee.getName();
+        } else if (SORT_SALARY.equals(sortField)) {
+            value = String.valueOf(employee.getSalary());
+        } else {
+            value = String.valueOf(employee.getId());
+        }
+        return new EmployeeCursor(sortField, direction, employee.getId(), value);
+    }
+
+    /*
+     * <pre>
+     * Decode cursor received from client
+     * </pre>
+     * @param String cursor : Encoded cursor
+     * @exception EmployeeServiceException : If cursor is malformed
+     * @return EmployeeCursor : Decoded cursor
+     */
+    public static EmployeeCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !isKeysetField(parts[0])) {
+                throw new EmployeeServiceException("Invalid cursor " + cursor);
+            }
+            if (SORT_SALARY.equals(parts[0])) {
+                // Salary cursors are read back as numbers, reject a tampered value here and not in the query
+                Integer.valueOf(parts[3]);
+            }
+            return new EmployeeCursor(parts[0], Sort.Direction.fromString(parts[1]), Long.valueOf(parts[2]), parts[3]);
+        } catch (IllegalArgumentException e) {
+            throw new EmployeeServiceException("Invalid cursor " + cursor);
+        }
+    }
+
+    /*
+     * <pre>
+     * Encode cursor for client
+     * </pre>
+     * @return String : Opaque cursor
+     */
+    public String encode() {
+        String raw = sortField + "|" + direction.name() + "|" + lastId + "|" + lastValue;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Integer lastSalary() {
+        return Integer.valueOf(lastValue);
+    }
+
+    /*
+     * <pre>
+     * Keyset paging needs a unique, non null ordering, so only these fields are supported
+     * </pre>
+     */
+    public static boolean isKeysetField(String field) {
+        return SORT_ID.equals(field) || SORT_NAME.equals(field) || SORT_SALARY.equals(field);
+    }
+}
@@ -0,0 +1,173 @@
+package jp.co.apidemo.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.config.ReplicaRoutingDataSource;
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.exception.EmployeePreconditionFailedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/*
+ * <pre>
+ * ETags of employee resources
+ * Single employee : strong ETag from id and version
+ * List page : weak ETag from max version and a digest of (id, version) of the page and its paging metadata
+ * Last ETag per list query is kept in employeeListETag cache, evicted with employeeCount on every write,
+ * so a poll with a current If-None-Match is answered without database access
+ * ETags are kept per generation : the eviction of a write also drops the generation marker, so an ETag computed
+ * while the write committed is stored under the previous generation and never served
+ * ETags are not kept while replicas may lag behind a write, a page read from a replica could be stale
+ * </pre>
+ */
+@Service
+public class EmployeeETags {
+
+    public static final String LIST_CACHE = "employeeListETag";
+
+    private static final String GENERATION = "generation";
+
+    private final Cache listETags;
+    private final AtomicLong generations = new AtomicLong();
+    private ReplicaRoutingDataSource replicaRouting;
+
+    @Autowired
+    public EmployeeETags(CacheManager cacheManager) {
+        this.listETags = cacheManager.getCache(LIST_CACHE);
+    }
+
+    @Autowired(required = false)
+    public void setReplicaRouting(ReplicaRoutingDataSource replicaRouting) {
+        this.replicaRouting = replicaRouting;
+    }
+
+    /*
+     * <pre>
+     * Strong ETag of single employee
+     * </pre>
+     * @param EmployeeSummary employee : Employee
+     * @return String : Quoted ETag
+     */
+    public String forEmployee(EmployeeSummary employee) {
+        return "\"" + employee.getId() + "-" + employee.getVersion() + "\"";
+    }
+
+    /*
+     * <pre>
+     * Version expected by If-Match header of single employee (strong comparison)
+     * </pre>
+     * @param String ifMatch : Header value, may be null or *
+     * @param Long employeeId : Employee Id of request
+     * @exception EmployeePreconditionFailedException : If header is not a strong ETag of this employee
+     * @return Long : Expected version, null if update is not conditional
+     */
+    public Long expectedVersion(String ifMatch, Long employeeId) {
+        if (ifMatch == null || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+        String prefix = "\"" + employeeId + "-";
+        String etag = ifMatch.trim();
+        if (etag.startsWith(prefix) && etag.endsWith("\"") && etag.length() > prefix.length() + 1) {
+            try {
+                return Long.valueOf(etag.substring(prefix.length(), etag.length() - 1));
+            } catch (NumberFormatException e) {
+                // falls through to precondition failure
+            }
+        }
+        throw new EmployeePreconditionFailedException("If-Match " + ifMatch + " does not match employee " + employeeId);
+    }
+
+    /*
+     * <pre>
+     * Weak ETag of list page
+     * </pre>
+     * @param Map<String,Object> page : Listing response, may be null when nothing matches
+     * @return String : Weak ETag
+     */
+    @SuppressWarnings("unchecked")
+    public String forPage(Map<String, Object> page) {
+        long maxVersion = 0;
+        CRC32 digest = new CRC32();
+        if (page != null) {
+            for (EmployeeSummary employee : (List<EmployeeSummary>) page.get("employees")) {
+                maxVersion = Math.max(maxVersion, employee.getVersion() == null ? 0 : employee.getVersion());
+                update(digest, employee.getId() + ":" + employee.getVersion() + ",");
+            }
+            update(digest, page.get("hasNext") + "|" + page.get("totalItems") + "|" + page.get("nextCursor"));
+        }
+        return "W/\"" + maxVersion + "-" + Long.toHexString(digest.getValue()) + "\"";
+    }
+
+    /*
+     * <pre>
+     * Current generation of list ETags, taken before the page is read
+     * A new generation starts after every write
+     * </pre>
+     * @return Long : Generation
+     */
+    public Long generation() {
+        Long current = listETags.get(GENERATION, Long.class);
+        if (current != null) {
+            return current;
+        }
+        Long next = generations.incrementAndGet();
+        Cache.ValueWrapper existing = listETags.putIfAbsent(GENERATION, next);
+        return existing == null || existing.get() == null ? next : (Long) existing.get();
+    }
+
+    /*
+     * <pre>
+     * Last ETag served for list query
+     * </pre>
+     * @param Long generation : Generation taken before the page is read
+     * @param String query : Key built from all list parameters
+     * @return String : ETag, null if unknown or evicted by a write
+     */
+    public String getPage(Long generation, String query) {
+        return listETags.get(generation + ":" + query, String.class);
+    }
+
+    public void putPage(Long generation, String query, String etag) {
+        if (replicaRouting != null && replicaRouting.isReplicaLagging()) {
+            return;
+        }
+        listETags.put(generation + ":" + query, etag);
+    }
+
+    /*
+     * <pre>
+     * Weak comparison of If-None-Match header with ETag
+     * </pre>
+     * @param String ifNoneMatch : Header value, may list several ETags or be *
+     * @param String etag : Current ETag
+     * @return boolean : true if client copy is current
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String current = opaque(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate) || opaque(candidate).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static void update(CRC32 digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,23 @@
+package jp.co.apidemo.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface EmployeeExportService {
+
+    String FORMAT_NDJSON = "ndjson";
+    String FORMAT_CSV = "csv";
+
+    /*
+     * <pre>
+     * Export all employees ordered by id
+     * Rows are streamed from a database cursor straight to output, memory use do not depend on table size
+     * Password is never exported
+     * </pre>
+     * @param String format : ndjson or csv (id,name,salary,department,roles)
+     * @param OutputStream out : Output to write to
+     * @exception EmployeeServiceException : If format is not supported
+     * @return long : Number of exported employees
+     */
+    public long exportEmployees(String format, OutputStream out) throws IOException;
+}
@@ -0,0 +1,140 @@
+package jp.co.apidemo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.exception.EmployeeServiceException;
+import jp.co.apidemo.repository.EmployeeRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+@Slf4j
+public class EmployeeExportServiceImpl implements EmployeeExportService {
+
+    private static final ObjectWriter ROW_WRITER = new ObjectMapper().writer();
+    private static final String CSV_HEADER = "id,name,salary,department,roles";
+    private static final int CLEAR_INTERVAL = Integer.parseInt(EmployeeRepository.EXPORT_FETCH_SIZE);
+
+    private final EmployeeRepository employeeRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    public EmployeeExportServiceImpl(EmployeeRepository employeeRepository, PlatformTransactionManager transactionManager) {
+        this.employeeRepository = employeeRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public long exportEmployees(String format, OutputStream out) throws IOException {
+        boolean csv = FORMAT_CSV.equalsIgnoreCase(format);
+        if (!csv && !FORMAT_NDJSON.equalsIgnoreCase(format)) {
+            throw new EmployeeServiceException("Export format " + format + " not supported");
+        }
+        log.info("exportEmployees: Export employees as {}", format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (csv) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        Long count;
+        try {
+            count = readOnlyTransaction.execute(status -> {
+                long rows = 0;
+                try (Stream<Employee> employees = employeeRepository.streamAll()) {
+                    Iterator<Employee> iterator = employees.iterator();
+                    while (iterator.hasNext()) {
+                        Employee employee = iterator.next();
+                        if (csv) {
+                            writeCsv(writer, employee);
+                        } else {
+                            writeNdjson(writer, employee);
+                        }
+                        // Written rows are not needed anymore, keep the persistence context small
+                        if (++rows % CLEAR_INTERVAL == 0) {
+                            entityManager.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return rows;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("exportEmployees: {} employees exported", count);
+        return count == null ? 0 : count;
+    }
+
+    private void writeNdjson(Writer writer, Employee employee) throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", employee.getId());
+        row.put("name", employee.getName());
+        row.put("salary", employee.getSalary());
+        row.put("department", employee.getDepartment());
+        row.put("roles", roleNames(employee));
+        writer.write(ROW_WRITER.writeValueAsString(row));
+        writer.write('\n');
+    }
+
+    private void writeCsv(Writer writer, Employee employee) throws IOException {
+        writer.write(String.valueOf(employee.getId()));
+        writer.write(',');
+        writer.write(csvValue(employee.getName()));
+        writer.write(',');
+        writer.write(String.valueOf(employee.getSalary()));
+        writer.write(',');
+        writer.write(csvValue(employee.getDepartment()));
+        writer.write(',');
+        writer.write(csvValue(String.join("|", roleNames(employee))));
+        writer.write('\n');
+    }
+
+    private List<String> roleNames(Employee employee) {
+        List<String> names = new ArrayList<>();
+        if (employee.getRoles() != null) {
+            for (Role role : employee.getRoles()) {
+                names.add(role.getName());
+            }
+        }
+        return names;
+    }
+
+    // RFC 4180 quoting
+    private String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,21 @@
+package jp.co.apidemo.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface EmployeeImportService {
+
+    /*
+     * <pre>
+     * Bulk import employees
+     * Input is a json array or newline delimited json of employee entities
+     * Rows are validated and hashed in parallel, then inserted in JDBC batches of configured size
+     * One result line per row is written as soon as its batch is committed
+     * </pre>
+     * @param InputStream in : Json array or NDJSON employees
+     * @param OutputStream out : NDJSON results ({"row":1,"status":"CREATED","id":10,"name":"XXX"} or {"row":2,"status":"REJECTED","name":"XXX","error":"..."})
+     * @return int : Number of created employees
+     */
+    public int importEmployees(InputStream in, OutputStream out) throws IOException;
+}
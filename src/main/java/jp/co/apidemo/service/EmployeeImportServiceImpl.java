@@ -0,0 +1,279 @@
+package jp.co.apidemo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jp.co.apidemo.config.BoundedExecutor;
+import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.repository.EmployeeChangeRepository;
+import jp.co.apidemo.repository.EmployeeRepository;
+import jp.co.apidemo.repository.RoleRepository;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+@Service
+@Slf4j
+public class EmployeeImportServiceImpl implements EmployeeImportService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader EMPLOYEE_READER = MAPPER.readerFor(Employee.class);
+    private static final ObjectWriter RESULT_WRITER = MAPPER.writer();
+    private static final byte[] NEW_LINE = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private final EmployeeRepository employeeRepository;
+    private final EmployeeChangeRepository changeRepository;
+    private final RoleRepository roleRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final EmployeeSearchIndex searchIndex;
+    private final DepartmentAggregateCache departmentAggregates;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedExecutor hashingExecutor;
+    private final int batchSize;
+
+    @Autowired
+    public EmployeeImportServiceImpl(EmployeeRepository employeeRepository, EmployeeChangeRepository changeRepository,
+                                     RoleRepository roleRepository,
+                                     PasswordEncoder passwordEncoder, Validator validator,
+                                     EmployeeSearchIndex searchIndex, DepartmentAggregateCache departmentAggregates,
+                                     PlatformTransactionManager transactionManager,
+                                     @Qualifier("hashingExecutor") BoundedExecutor hashingExecutor,
+                                     @Value("${app.employee.import.batch-size:500}") int batchSize) {
+        this.employeeRepository = employeeRepository;
+        this.changeRepository = changeRepository;
+        this.roleRepository = roleRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.searchIndex = searchIndex;
+        this.departmentAggregates = departmentAggregates;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hashingExecutor = hashingExecutor;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    @CacheEvict(cacheNames = {"employeeCount", "employeeListETag", "employeeMissing"}, allEntries = true)
+    public int importEmployees(InputStream in, OutputStream out) throws IOException {
+        log.info("importEmployees: Bulk import with batch size {}", batchSize);
+        Map<String, Role> roles = new HashMap<>();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        int row = 0;
+        int created = 0;
+        try (MappingIterator<Employee> employees = EMPLOYEE_READER.readValues(in)) {
+            while (employees.hasNextValue()) {
+                batch.add(new ImportRow(++row, employees.nextValue()));
+                if (batch.size() == batchSize) {
+                    created += importBatch(batch, roles, out);
+                    batch.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // Malformed input can not be resynchronized, rows read so far are still imported
+            created += importBatch(batch, roles, out);
+            batch.clear();
+            writeResult(out, result(row + 1, "REJECTED", null, null, "Malformed input: " + e.getOriginalMessage()));
+        }
+        created += importBatch(batch, roles, out);
+        log.info("importEmployees: {} of {} rows created", created, row);
+        return created;
+    }
+
+    private int importBatch(List<ImportRow> batch, Map<String, Role> roles, OutputStream out) throws IOException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        validate(batch, roles);
+        hashPasswords(batch);
+
+        List<ImportRow> accepted = new ArrayList<>();
+        for (ImportRow row : batch) {
+            if (row.error == null) {
+                accepted.add(row);
+            }
+        }
+        if (!accepted.isEmpty()) {
+            try {
+                insert(accepted);
+            } catch (DataAccessException e) {
+                // One bad row fails the whole JDBC batch, retry one by one to find it
+                log.info("importEmployees: Batch insert failed, retrying rows one by one: {}", e.getMessage());
+                for (ImportRow row : accepted) {
+                    try {
+                        // The failed batch persist left id, version and timestamps set, the row would be merged
+                        resetGenerated(row.employee);
+                        insert(Collections.singletonList(row));
+                    } catch (DataAccessException rowException) {
+                        row.error = rowException.getMostSpecificCause().getMessage();
+                    }
+                }
+            }
+        }
+
+        int created = 0;
+        for (ImportRow row : batch) {
+            if (row.error == null) {
+                created++;
+                searchIndex.put(row.employee.getId(), row.employee.getName(), row.employee.getDepartment());
+                departmentAggregates.add(row.employee.getDepartment(), row.employee.getSalary());
+                writeResult(out, result(row.row, "CREATED", row.employee.getId(), row.employee.getName(), null));
+            } else {
+                writeResult(out, result(row.row, "REJECTED", null, row.employee.getName(), row.error));
+            }
+        }
+        out.flush();
+        return created;
+    }
+
+    // Bean validation, duplicate names (in batch and in database) and role names
+    private void validate(List<ImportRow> batch, Map<String, Role> roles) {
+        Set<String> names = new HashSet<>();
+        for (ImportRow row : batch) {
+            Employee employee = row.employee;
+            resetGenerated(employee);
+            Set<ConstraintViolation<Employee>> violations = validator.validate(employee);
+            if (!violations.isEmpty()) {
+                row.error = violations.iterator().next().getMessage();
+            } else if (employee.getName() == null || employee.getSalary() == null || employee.getPassword() == null) {
+                row.error = "name, salary and password are mandatory";
+            } else if (!names.add(employee.getName())) {
+                row.error = "Duplicate employee name " + employee.getName() + " in import";
+            } else {
+                row.error = resolveRoles(employee, roles);
+            }
+        }
+        if (!names.isEmpty()) {
+            Set<String> existing = new HashSet<>(employeeRepository.findExistingNames(names));
+            for (ImportRow row : batch) {
+                if (row.error == null && existing.contains(row.employee.getName())) {
+                    row.error = "Employee with name " + row.employee.getName() + " already exists in database";
+                }
+            }
+        }
+    }
+
+    // Generated columns are never taken from input, an employee with id or version is merged instead of persisted
+    private static void resetGenerated(Employee employee) {
+        employee.setId(null);
+        employee.setVersion(null);
+        employee.setCreatedAt(null);
+        employee.setUpdatedAt(null);
+    }
+
+    private String resolveRoles(Employee employee, Map<String, Role> roles) {
+        Collection<Role> requested = employee.getRoles();
+        List<Role> resolved = new ArrayList<>();
+        if (requested != null) {
+            for (Role role : requested) {
+                Role stored = roles.computeIfAbsent(role.getName(), roleRepository::findByName);
+                if (stored == null) {
+                    roles.remove(role.getName());
+                    return "Role with name " + role.getName() + " not exists in database";
+                }
+                resolved.add(stored);
+            }
+        }
+        employee.setRoles(resolved);
+        return null;
+    }
+
+    // Shared hashing executor : at most one task per pool thread is in flight, so an import does not fill the queue
+    // of asynchronous saves, the import thread hashes the row itself when the executor is saturated
+    private void hashPasswords(List<ImportRow> batch) {
+        int window = Math.max(1, hashingExecutor.getMaxPoolSize());
+        List<CompletableFuture<Void>> hashes = new ArrayList<>(window);
+        for (ImportRow row : batch) {
+            if (row.error != null) {
+                continue;
+            }
+            Runnable hash = () -> row.employee.setPassword(passwordEncoder.encode(row.employee.getPassword()));
+            try {
+                hashes.add(CompletableFuture.runAsync(hash, hashingExecutor));
+            } catch (RejectedExecutionException e) {
+                hash.run();
+            }
+            if (hashes.size() == window) {
+                CompletableFuture.allOf(hashes.toArray(new CompletableFuture[0])).join();
+                hashes.clear();
+            }
+        }
+        CompletableFuture.allOf(hashes.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void insert(List<ImportRow> rows) {
+        transactionTemplate.execute(status -> {
+            List<Employee> employees = new ArrayList<>(rows.size());
+            for (ImportRow row : rows) {
+                employees.add(row.employee);
+            }
+            employeeRepository.saveAll(employees);
+            // Outbox rows of the batch, committed with the employees
+            List<EmployeeChange> changes = new ArrayList<>(employees.size());
+            for (Employee employee : employees) {
+                changes.add(EmployeeChange.of(EmployeeChange.Type.CREATED, employee));
+            }
+            changeRepository.saveAll(changes);
+            return null;
+        });
+    }
+
+    private Map<String, Object> result(int row, String status, Long id, String name, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("row", row);
+        result.put("status", status);
+        if (id != null) {
+            result.put("id", id);
+        }
+        result.put("name", name);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    private void writeResult(OutputStream out, Map<String, Object> result) throws IOException {
+        out.write(RESULT_WRITER.writeValueAsBytes(result));
+        out.write(NEW_LINE);
+    }
+
+    private static class ImportRow {
+        private final int row;
+        private final Employee employee;
+        private String error;
+
+        ImportRow(int row, Employee employee) {
+            this.row = row;
+            this.employee = employee;
+        }
+    }
+}
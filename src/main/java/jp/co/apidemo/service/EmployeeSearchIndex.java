@@ -0,0 +1,393 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.repository.EmployeeRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/*
+ * <pre>
+ * In-process inverted trigram index over employee name and department
+ * Texts are lowercased and prefixed with a start marker, "Tom" is indexed as "^to" and "tom"
+ * A fragment is resolved by intersecting the posting lists of its trigrams, candidates are then verified
+ * Fragments shorter than a trigram are resolved by scanning indexed documents in id order up to the limit
+ * (still no database access)
+ * Built from database when application is ready, kept up to date by save, update, delete and import
+ * </pre>
+ */
+@Service
+@Slf4j
+public class EmployeeSearchIndex {
+
+    public enum SearchMode {
+        // Fragment anywhere in name or department (case insensitive)
+        CONTAINS,
+        // Name or department starts with fragment (case insensitive)
+        PREFIX,
+        // Trigram similarity, tolerates typos, best match first
+        RANKED
+    }
+
+    private static final int GRAM = 3;
+    private static final char START = '^';
+
+    private final EmployeeRepository employeeRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int maxIds;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Ordered by id, a scan stops at the limit with the lowest matching ids
+    private final Map<Long, Document> documents = new TreeMap<>();
+    private final Map<String, Postings> nameGrams = new HashMap<>();
+    private final Map<String, Postings> departmentGrams = new HashMap<>();
+    private volatile boolean ready;
+
+    @Autowired
+    public EmployeeSearchIndex(EmployeeRepository employeeRepository, PlatformTransactionManager transactionManager,
+                               @Value("${app.employee.search.max-ids:1000}") int maxIds) {
+        this.employeeRepository = employeeRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxIds = maxIds;
+    }
+
+    /*
+     * <pre>
+     * Load index from database
+     * Searches are not answered from index until load completed
+     * </pre>
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        readOnlyTransaction.execute(status -> {
+            try (Stream<EmployeeSummary> employees = employeeRepository.streamSummaries()) {
+                load(employees.iterator());
+            }
+            return null;
+        });
+    }
+
+    /*
+     * <pre>
+     * Replace index content
+     * </pre>
+     * @param Iterator<EmployeeSummary> employees : All employees
+     */
+    public void load(Iterator<EmployeeSummary> employees) {
+        lock.writeLock().lock();
+        try {
+            ready = false;
+            documents.clear();
+            nameGrams.clear();
+            departmentGrams.clear();
+            while (employees.hasNext()) {
+                EmployeeSummary employee = employees.next();
+                add(employee.getId(), employee.getName(), employee.getDepartment());
+            }
+            ready = true;
+            log.info("load: {} employees indexed, {} name and {} department trigrams",
+                documents.size(), nameGrams.size(), departmentGrams.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * <pre>
+     * Add or replace indexed employee
+     * </pre>
+     * @param Long id : Employee id
+     * @param String name : Employee name
+     * @param String department : Department name, may be null
+     */
+    public void put(Long id, String name, String department) {
+        if (id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            delete(id);
+            add(id, name, department);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * <pre>
+     * Remove indexed employee
+     * </pre>
+     * @param Long id : Employee id
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            delete(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * <pre>
+     * Ids of employees whose name contains fragment, same (case sensitive) match as name like '%fragment%'
+     * </pre>
+     * @param String fragment : Name fragment
+     * @return Set<Long> : Matching ids in ascending order,
+     *                     null if index is not loaded yet or more than max-ids employees match (caller should query database)
+     */
+    public Set<Long> findNameContaining(String fragment) {
+        if (!ready) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            List<Long> ids = match(nameGrams, grams(fragment.toLowerCase(Locale.ROOT), false),
+                document -> document.name != null && document.name.contains(fragment), maxIds == Integer.MAX_VALUE ? maxIds : maxIds + 1);
+            return ids.size() > maxIds ? null : new TreeSet<>(ids);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * <pre>
+     * Search name and department
+     * </pre>
+     * @param String query : Searched text
+     * @param SearchMode mode : CONTAINS, PREFIX or RANKED
+     * @param int limit : Maximum number of ids returned, at least 1 (validated by caller)
+     * @return List<Long> : Matching ids, ascending id for CONTAINS/PREFIX, best match first for RANKED,
+     *                      null if index is not loaded yet
+     */
+    public List<Long> search(String query, SearchMode mode, int limit) {
+        if (!ready) {
+            return null;
+        }
+        String text = query.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            if (mode == SearchMode.RANKED) {
+                List<String> grams = grams(text, true);
+                if (!grams.isEmpty()) {
+                    return rank(grams, limit);
+                }
+                mode = SearchMode.PREFIX;
+            }
+            boolean prefix = mode == SearchMode.PREFIX;
+            List<String> grams = grams(text, prefix);
+            Predicate<Document> verify = prefix
+                ? document -> startsWith(document.nameLower, text) || startsWith(document.departmentLower, text)
+                : document -> contains(document.nameLower, text) || contains(document.departmentLower, text);
+            Set<Long> ids = new TreeSet<>(match(nameGrams, grams, verify, limit));
+            ids.addAll(match(departmentGrams, grams, verify, limit));
+            List<Long> result = new ArrayList<>(ids);
+            return result.size() > limit ? result.subList(0, limit) : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Callers hold write lock
+    private void add(Long id, String name, String department) {
+        Document document = new Document(name, department);
+        documents.put(id, document);
+        for (String gram : document.nameGrams) {
+            nameGrams.computeIfAbsent(gram, key -> new Postings()).add(id);
+        }
+        for (String gram : document.departmentGrams) {
+            departmentGrams.computeIfAbsent(gram, key -> new Postings()).add(id);
+        }
+    }
+
+    private void delete(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        unlink(nameGrams, document.nameGrams, id);
+        unlink(departmentGrams, document.departmentGrams, id);
+    }
+
+    private void unlink(Map<String, Postings> index, List<String> grams, long id) {
+        for (String gram : grams) {
+            Postings postings = index.get(gram);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                index.remove(gram);
+            }
+        }
+    }
+
+    // Intersect posting lists of all grams (smallest first) and verify candidates, scan documents if there is no gram
+    private List<Long> match(Map<String, Postings> index, List<String> grams, Predicate<Document> verify, int limit) {
+        List<Long> ids = new ArrayList<>();
+        if (grams.isEmpty()) {
+            for (Map.Entry<Long, Document> entry : documents.entrySet()) {
+                if (ids.size() == limit) {
+                    break;
+                }
+                if (verify.test(entry.getValue())) {
+                    ids.add(entry.getKey());
+                }
+            }
+            return ids;
+        }
+        List<Postings> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            Postings postings = index.get(gram);
+            if (postings == null) {
+                return ids;
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(postings -> postings.size));
+        Postings smallest = lists.get(0);
+        for (int i = 0; i < smallest.size && ids.size() < limit; i++) {
+            long id = smallest.ids[i];
+            boolean inAll = true;
+            for (int j = 1; j < lists.size() && inAll; j++) {
+                inAll = lists.get(j).contains(id);
+            }
+            if (inAll && verify.test(documents.get(id))) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    // Jaccard similarity of trigram sets, best of name and department
+    private List<Long> rank(List<String> grams, int limit) {
+        Map<Long, Double> scores = new HashMap<>();
+        score(nameGrams, grams, scores, true);
+        score(departmentGrams, grams, scores, false);
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+        List<Long> ids = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            ids.add(ranked.get(i).getKey());
+        }
+        return ids;
+    }
+
+    private void score(Map<String, Postings> index, List<String> grams, Map<Long, Double> scores, boolean name) {
+        Map<Long, Integer> shared = new HashMap<>();
+        for (String gram : grams) {
+            Postings postings = index.get(gram);
+            if (postings != null) {
+                for (int i = 0; i < postings.size; i++) {
+                    shared.merge(postings.ids[i], 1, Integer::sum);
+                }
+            }
+        }
+        for (Map.Entry<Long, Integer> entry : shared.entrySet()) {
+            Document document = documents.get(entry.getKey());
+            int documentGrams = name ? document.nameGrams.size() : document.departmentGrams.size();
+            double score = entry.getValue() / (double) (grams.size() + documentGrams - entry.getValue());
+            scores.merge(entry.getKey(), score, Math::max);
+        }
+    }
+
+    private static List<String> grams(String text, boolean fromStart) {
+        String padded = fromStart ? START + text : text;
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + GRAM));
+        }
+        return new ArrayList<>(grams);
+    }
+
+    private static boolean contains(String text, String fragment) {
+        return text != null && text.contains(fragment);
+    }
+
+    private static boolean startsWith(String text, String fragment) {
+        return text != null && text.startsWith(fragment);
+    }
+
+    private static final class Document {
+        private final String name;
+        private final String nameLower;
+        private final String departmentLower;
+        private final List<String> nameGrams;
+        private final List<String> departmentGrams;
+
+        Document(String name, String department) {
+            this.name = name;
+            this.nameLower = name == null ? null : name.toLowerCase(Locale.ROOT);
+            this.departmentLower = department == null ? null : department.toLowerCase(Locale.ROOT);
+            this.nameGrams = nameLower == null ? new ArrayList<>() : grams(nameLower, true);
+            this.departmentGrams = departmentLower == null ? new ArrayList<>() : grams(departmentLower, true);
+        }
+    }
+
+    // Sorted id array, ids are mostly appended in ascending order
+    private static final class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        void add(long id) {
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity();
+                ids[size++] = id;
+                return;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            ensureCapacity();
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+            }
+        }
+    }
+}
@@ -6,7 +6,9 @@ import java.util.Map;
 
 import org.springframework.stereotype.Component;
 
+import jp.co.apidemo.entities.DepartmentAggregate;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeSummary;
 import jp.co.apidemo.entities.Role;
 
 @Component
@@ -26,6 +28,78 @@ public interface EmployeeService {
      */
     public Map<String, Object> retrieveEmployees(String name,int page,int size,String[] sort);
 
+    /*
+     * <pre>
+     * Fetch employee from database
+     * Fetch all employee if input name field is null
+     * Fetch employee in page of input size with descending order
+     * Total items is served from cache, count query is skipped when withTotal is false
+     * </pre>
+     * @param Sting name : Employee name
+     * @param int page : page parameter
+     * @param int size : page size limit
+     * @param String[] sort : sorting order
+     * @param boolean withTotal : Include total items and total pages in response
+     * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,hasNext info and if requested total items info, total pages info.)
+     */
+    public Map<String, Object> retrieveEmployees(String name,int page,int size,String[] sort,boolean withTotal);
+
+    /*
+     * <pre>
+     * Fetch employee from database
+     * Fetch all employee if all filters are null, filters are combined with and
+     * Total items is served from cache, count query is skipped when withTotal is false
+     * </pre>
+     * @param Sting name : Employee name fragment
+     * @param String department : Department name (exact match)
+     * @param Integer minSalary : Lowest salary (inclusive)
+     * @param Integer maxSalary : Highest salary (inclusive)
+     * @param int page : page parameter
+     * @param int size : page size limit
+     * @param String[] sort : sorting order (id, name, salary or department)
+     * @param boolean withTotal : Include total items and total pages in response
+     * @exception EmployeeServiceException : If sort field is not indexed
+     * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,hasNext info and if requested total items info, total pages info.)
+     */
+    public Map<String, Object> retrieveEmployees(String name,String department,Integer minSalary,Integer maxSalary,
+                                                 int page,int size,String[] sort,boolean withTotal);
+
+    /*
+     * <pre>
+     * Headcount and salary statistics per department
+     * Served from in-memory aggregate cache, no database access once cache is loaded
+     * </pre>
+     * @return List<DepartmentAggregate> : One entry per department (headcount, salary sum/avg/min/max)
+     */
+    public List<DepartmentAggregate> getDepartmentAggregates();
+
+    /*
+     * <pre>
+     * Fetch employee from database with keyset (seek) paging
+     * First page if after is empty, otherwise page following the cursor row
+     * No count query, latency do not depend on page depth
+     * </pre>
+     * @param Sting name : Employee name
+     * @param String after : Opaque cursor returned by previous page
+     * @param int size : page size limit
+     * @param String[] sort : sorting criteria,sorting order (id, name or salary)
+     * @exception EmployeeServiceException : If cursor or sort field is not supported
+     * @return Map<String,Object> : Return map with employee data along with next page cursor
+     */
+    public Map<String, Object> retrieveEmployeesAfter(String name, String after, int size, String[] sort);
+
+     /*
+     * <pre>
+     * Search employees by name and department from search index
+     * </pre>
+     * @param String query : Searched text
+     * @param String mode : contains, prefix or ranked
+     * @param int limit : Maximum number of employees
+     * @exception EmployeeServiceException : If mode is not supported or index is not loaded yet
+     * @return Map<String,Object> : Return map with employee data (best match first in ranked mode) and mode
+     */
+    public Map<String, Object> searchEmployees(String query, String mode, int limit);
+
      /*
      * <pre>
      * Fetch single employee with Id
@@ -33,9 +107,9 @@ public interface EmployeeService {
      * </pre>
      * @param Long employeeId : Employee Id
      * @exception EmployeeServiceException : If id do not exists in database
-     * @return <Optional>Employee : Return single employee entity
+     * @return EmployeeSummary : Return single employee (id, name, salary, department)
      */
-    public Employee getEmployee(Long employeeId);
+    public EmployeeSummary getEmployee(Long employeeId);
 
      /*
      * <pre>
@@ -58,6 +132,15 @@ public interface EmployeeService {
      */
     public Employee saveEmployee(Employee employee) throws ParseException;
 
+     /*
+     * <pre>
+     * Add employee with password already encoded to database
+     * </pre>
+     * @param Employee employee : Employee entity, password is a hash of password encoder
+     * @Return Employee : Database saved entity
+     */
+    public Employee saveEncodedEmployee(Employee employee);
+
      /*
      * <pre>
      * Assign roles to employe from role
@@ -90,15 +173,49 @@ public interface EmployeeService {
      */
     public String deleteEmployee(Long employeeId);
 
+     /*
+     * <pre>
+     * Fetch many employees with Id from employee cache, misses with one query
+     * </pre>
+     * @param List<Long> employeeIds : Employee Ids
+     * @exception EmployeeServiceException : If too many ids are requested
+     * @return Map<String,Object> : employees in request order and ids not found
+     */
+    public Map<String, Object> getEmployees(List<Long> employeeIds);
+
      /*
      * <pre>
      * Update single employee with Id
-     * Cache put enabled
+     * Cache write through, optimistic locking on version
      * </pre>
      * @param Employee employeeIn
      * @param Long id : Employee Id
-     * @exception EmployeeServiceException : If id do not exists in database
-     * @return <Optional>Employee : Return single employee entity
+     * @param Long expectedVersion : Version from If-Match header, null if not conditional
+     * @exception EmployeePreconditionFailedException : If expected version is not current
+     * @exception EmployeeConflictException : If employee was updated since version of request body
+     * @return EmployeeSummary : Return updated employee summary
+     */
+    public EmployeeSummary updateEmployee(Employee employee, Long employeeId, Long expectedVersion);
+
+     /*
+     * <pre>
+     * Partial update of single employee (JSON Merge Patch), only changed columns are written
+     * </pre>
+     * @param Map<String,Object> patch : Fields to change (name, salary, department, password)
+     * @param Long employeeId : Employee Id
+     * @param Long expectedVersion : Version from If-Match header, null if not conditional
+     * @exception EmployeeServiceException : If a field is unknown or has wrong type
+     * @exception EmployeePreconditionFailedException : If expected version is not current
+     * @return EmployeeSummary : Return updated employee summary
+     */
+    public EmployeeSummary patchEmployee(Map<String, Object> patch, Long employeeId, Long expectedVersion);
+
+     /*
+     * <pre>
+     * Evict cached authentication data of employee
+     * Next login reloads employee and roles from database
+     * </pre>
+     * @param String name : Employee name
      */
-    public Employee updateEmployee(Employee employee, Long employeeId);
+    public void evictUserDetails(String name);
 }
@@ -4,57 +4,104 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Order;
 import org.springframework.security.config.authentication.UserServiceBeanDefinitionParser;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import jp.co.apidemo.config.ReplicaRoutingDataSource;
+import jp.co.apidemo.entities.DepartmentAggregate;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.entities.EmployeeSummary;
 import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.exception.EmployeeBadRequestException;
+import jp.co.apidemo.exception.EmployeeConflictException;
+import jp.co.apidemo.exception.EmployeePreconditionFailedException;
 import jp.co.apidemo.exception.EmployeeServiceException;
+import jp.co.apidemo.repository.EmployeeChangeRepository;
 import jp.co.apidemo.repository.EmployeeRepository;
 import jp.co.apidemo.repository.RoleRepository;
 
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.cache.annotation.EnableCaching;
 
 import java.util.Optional;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 @EnableCaching
-public class EmployeeServiceImpl implements EmployeeService, UserDetailsService {
+public class EmployeeServiceImpl implements EmployeeService, UserDetailsService, UserDetailsPasswordService {
     
     private EmployeeRepository employeeRepository;
     private RoleRepository roleRepository;
     private PasswordEncoder passwordEncoder;
+    private EmployeeSearchIndex searchIndex;
+    private DepartmentAggregateCache departmentAggregates;
+    private CacheManager cacheManager;
+    private EmployeeSummaryCache employeeSummaryCache;
+    private EmployeeChangeRepository changeRepository;
+
+    // Sort fields backed by an index (db/migration), sorting on other columns would sort the whole table
+    private static final Set<String> INDEXED_SORT_FIELDS = new HashSet<>(Arrays.asList("id", "name", "salary", "department"));
+
+    // Upper bound of batch get, keeps the in list of cache misses bounded
+    public static final int BATCH_GET_MAX_IDS = 1000;
+
+    // Upper bound of search limit, ranked search scores every candidate of the returned ids
+    public static final int SEARCH_MAX_LIMIT = 100;
 
     @Autowired
-    public EmployeeServiceImpl(EmployeeRepository empRep, RoleRepository roleRep, PasswordEncoder passEnc) {
+    public EmployeeServiceImpl(EmployeeRepository empRep, RoleRepository roleRep, PasswordEncoder passEnc,
+                               EmployeeSearchIndex searchIndex, DepartmentAggregateCache departmentAggregates,
+                               CacheManager cacheManager, EmployeeSummaryCache employeeSummaryCache,
+                               EmployeeChangeRepository changeRepository) {
         this.employeeRepository = empRep;
         this.roleRepository = roleRep;
         this.passwordEncoder = passEnc;
+        this.searchIndex = searchIndex;
+        this.departmentAggregates = departmentAggregates;
+        this.cacheManager = cacheManager;
+        this.employeeSummaryCache = employeeSummaryCache;
+        this.changeRepository = changeRepository;
     } 
     
     /*
      * <pre>
      * Assign roles to employe from role
+     * Change is written to the outbox in the same transaction
      * </pre>
      * @param String name : Name of employee
      * @param String roleName : Name of role
@@ -63,6 +110,11 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
      * @return String : Added role information
      */
     @Override
+    @Transactional
+    @Caching(evict = {
+      @CacheEvict(cacheNames = "userDetails", key = "#name"),
+      @CacheEvict(cacheNames = {"employeeCount", "employeeListETag"}, allEntries = true)
+    })
     public String addRoleToEmployee(String name, String roleName) {
         log.info("Adding role {} to user {}", roleName, name);
         //Check if input name check 
@@ -79,6 +131,9 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
         }
         employee.getRoles().add(role);
         employeeRepository.save(employee);
+        changeRepository.save(EmployeeChange.roleAdded(employee, roleName));
+        // Owned roles collection increments the version, cached summary (ETag) is outdated
+        evictEmployeeAfterCommit(employee.getId());
         return "Role "+roleName+" added to employee "+ name ;
     }
 
@@ -98,14 +153,43 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
      /*
      * <pre>
      * Add employee to database
+     * Change is written to the outbox in the same transaction
      * </pre>
      * @param Employee employee : Employee entity
      * @Return Employee : Database saved entity
      */
+    @Transactional
+    @CacheEvict(cacheNames = {"employeeCount", "employeeListETag", "employeeMissing"}, allEntries = true)
     public Employee saveEmployee(Employee employee){
-        log.info("Saving new employee {} to the database", employee.getName());
         employee.setPassword(passwordEncoder.encode(employee.getPassword()));
-        return employeeRepository.save(employee);
+        return insertEmployee(employee);
+    }
+
+     /*
+     * <pre>
+     * Add employee with password already encoded to database
+     * Change is written to the outbox in the same transaction
+     * </pre>
+     * @param Employee employee : Employee entity, password is a hash of password encoder
+     * @Return Employee : Database saved entity
+     */
+    @Transactional
+    @CacheEvict(cacheNames = {"employeeCount", "employeeListETag", "employeeMissing"}, allEntries = true)
+    public Employee saveEncodedEmployee(Employee employee){
+        return insertEmployee(employee);
+    }
+
+    private Employee insertEmployee(Employee employee) {
+        log.info("Saving new employee {} to the database", employee.getName());
+        Employee saved = employeeRepository.save(employee);
+        changeRepository.save(EmployeeChange.of(EmployeeChange.Type.CREATED, saved));
+        // Constraint violations surface here, the in-memory index and aggregates follow the commit
+        employeeRepository.flush();
+        afterCommit(() -> {
+          searchIndex.put(saved.getId(), saved.getName(), saved.getDepartment());
+          departmentAggregates.add(saved.getDepartment(), saved.getSalary());
+        });
+        return saved;
     }
 
     /*
@@ -120,34 +204,72 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
      * @param String[] sort : ssorting criteria,sorting order
      * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,total items info, total pages info.)
      */
+    @Transactional(readOnly = true)
     public Map<String, Object> retrieveEmployees(String name,int page,int size,String[] sort) {
+        return retrieveEmployees(name, page, size, sort, true);
+    }
+
+    /*
+     * <pre>
+     * Fetch employee from database
+     * Fetch all employee if input name field is null
+     * Fetch employee in page of input size with descending order
+     * Same as filtered retrieval without department and salary filters
+     * </pre>
+     * @param Sting name : Employee name
+     * @param int page : page parameter
+     * @param int size : page size limit
+     * @param String[] sort : ssorting criteria,sorting order (id, name, salary or department)
+     * @param boolean withTotal : Include total items and total pages in response
+     * @exception EmployeeServiceException : If sort field is not indexed
+     * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,hasNext info and if requested total items info, total pages info.)
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> retrieveEmployees(String name,int page,int size,String[] sort,boolean withTotal) {
+        return retrieveEmployees(name, null, null, null, page, size, sort, withTotal);
+    }
+
+    /*
+     * <pre>
+     * Fetch employee from database
+     * Fetch all employee if all filters are null, filters are combined with and
+     * Name filter is resolved to ids by search index when it matches few employees, like query otherwise
+     * Page content is fetched as slice, total items is served from employeeCount cache
+     * Employees are selected as summaries (id, name, salary, department)
+     * Count is skipped when withTotal is false
+     * Slice and count run in one read only transaction, on a replica when replicas are configured
+     * </pre>
+     * @param Sting name : Employee name fragment
+     * @param String department : Department name (exact match)
+     * @param Integer minSalary : Lowest salary (inclusive)
+     * @param Integer maxSalary : Highest salary (inclusive)
+     * @param int page : page parameter
+     * @param int size : page size limit
+     * @param String[] sort : ssorting criteria,sorting order (id, name, salary or department)
+     * @param boolean withTotal : Include total items and total pages in response
+     * @exception EmployeeServiceException : If sort field is not indexed
+     * @return Map<String,Object> : Return map with employee data along with paging metadata(currentpage info,hasNext info and if requested total items info, total pages info.)
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> retrieveEmployees(String name,String department,Integer minSalary,Integer maxSalary,
+                                                 int page,int size,String[] sort,boolean withTotal) {
+        List<Order> orders = getSortOrders(sort);
+        boolean ranged = department != null || minSalary != null || maxSalary != null;
         try {
           log.info("retrieveEmployees: Fetch data from database");
-            List<Order> orders = new ArrayList<Order>();
-            if (sort[0].contains(",")) {
-              // will sort more than 2 fields
-              // sortOrder="field, direction"
-              for (String sortOrder : sort) {
-                String[] _sort = sortOrder.split(",");
-                orders.add(new Order(getSortDirection(_sort[1]), _sort[0]));
-              }
-            } else {
-              // sort=[field, direction]
-              orders.add(new Order(getSortDirection(sort[1]), sort[0]));
-            }
-            List<Employee> employees = new ArrayList<Employee>();
             Pageable pagingSort = PageRequest.of(page, size, Sort.by(orders));
-            Page<Employee> pageEmployees;
-            if (name == null)
-            {
-              pageEmployees = employeeRepository.findAll(pagingSort);
-            }
-            else
-            {
-            pageEmployees = employeeRepository.findByNameContaining(name, pagingSort);
-
+            Set<Long> ids = name == null ? null : searchIndex.findNameContaining(name);
+            Slice<EmployeeSummary> sliceEmployees;
+            if (ids != null) {
+              sliceEmployees = ids.isEmpty()
+                ? new SliceImpl<>(Collections.emptyList())
+                : employeeRepository.findSliceByIdIn(ids, department, minSalary, maxSalary, pagingSort);
+            } else if (ranged) {
+              sliceEmployees = employeeRepository.findFilteredSlice(name, department, minSalary, maxSalary, pagingSort);
+            } else {
+              sliceEmployees = employeeRepository.findFirstSlice(name, pagingSort);
             }
-            employees = pageEmployees.getContent();
+            List<EmployeeSummary> employees = sliceEmployees.getContent();
             
             if (employees.isEmpty()) {
               log.info("retrieveEmployees: No any data record exists");
@@ -155,10 +277,21 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
             }
             Map<String, Object> response = new HashMap<>();
             response.put("employees", employees);
-            response.put("currentPage", (pageEmployees.getNumber()));
-            System.out.println("currentpage "+pageEmployees.getNumber());
-            response.put("totalItems", (pageEmployees.getTotalElements()));
-            response.put("totalPages", (pageEmployees.getTotalPages()));
+            response.put("currentPage", (sliceEmployees.getNumber()));
+            response.put("hasNext", sliceEmployees.hasNext());
+            if (withTotal) {
+              long total;
+              if (ids != null) {
+                total = ranged ? employeeRepository.countByIdIn(ids, department, minSalary, maxSalary) : ids.size();
+              } else if (ranged) {
+                total = employeeRepository.countByFilter(name, department, minSalary, maxSalary);
+              } else {
+                total = employeeRepository.countByNameFilter(name);
+              }
+              Page<EmployeeSummary> pageEmployees = new PageImpl<>(employees, pagingSort, total);
+              response.put("totalItems", (pageEmployees.getTotalElements()));
+              response.put("totalPages", (pageEmployees.getTotalPages()));
+            }
            
             return response;
           } catch (Exception e) {
@@ -167,19 +300,150 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
           }
     }
 
+    /*
+     * <pre>
+     * Fetch employee from database with keyset (seek) paging
+     * First page if after is empty, otherwise page following the cursor row
+     * Sort order is taken from the cursor once paging started, no count query is executed
+     * Employees are selected as summaries (id, name, salary, department)
+     * </pre>
+     * @param Sting name : Employee name
+     * @param String after : Opaque cursor returned by previous page
+     * @param int size : page size limit
+     * @param String[] sort : sorting criteria,sorting order (id, name or salary)
+     * @exception EmployeeServiceException : If cursor or sort field is not supported
+     * @return Map<String,Object> : Return map with employee data along with next page cursor
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> retrieveEmployeesAfter(String name, String after, int size, String[] sort) {
+        log.info("retrieveEmployeesAfter: Fetch data from database");
+        EmployeeCursor cursor = null;
+        String sortField;
+        Sort.Direction direction;
+        if (after == null || after.isEmpty()) {
+          Order order = getSortOrders(sort).get(0);
+          sortField = order.getProperty();
+          direction = order.getDirection();
+          if (!EmployeeCursor.isKeysetField(sortField)) {
+            throw new EmployeeServiceException("Cursor paging is not supported for sort field " + sortField);
+          }
+        } else {
+          cursor = EmployeeCursor.decode(after);
+          sortField = cursor.getSortField();
+          direction = cursor.getDirection();
+        }
+
+        // id breaks ties for non unique sort keys
+        Sort keyset = EmployeeCursor.SORT_ID.equals(sortField)
+          ? Sort.by(direction, sortField)
+          : Sort.by(direction, sortField).and(Sort.by(direction, EmployeeCursor.SORT_ID));
+        Pageable seek = PageRequest.of(0, size, keyset);
+        boolean asc = direction.isAscending();
+
+        Slice<EmployeeSummary> slice;
+        if (cursor == null) {
+          slice = employeeRepository.findFirstSlice(name, seek);
+        } else if (EmployeeCursor.SORT_NAME.equals(sortField)) {
+          slice = asc ? employeeRepository.seekByNameAfter(name, cursor.getLastValue(), seek)
+                      : employeeRepository.seekByNameBefore(name, cursor.getLastValue(), seek);
+        } else if (EmployeeCursor.SORT_SALARY.equals(sortField)) {
+          slice = asc ? employeeRepository.seekBySalaryAfter(name, cursor.lastSalary(), cursor.getLastId(), seek)
+                      : employeeRepository.seekBySalaryBefore(name, cursor.lastSalary(), cursor.getLastId(), seek);
+        } else {
+          slice = asc ? employeeRepository.seekByIdAfter(name, cursor.getLastId(), seek)
+                      : employeeRepository.seekByIdBefore(name, cursor.getLastId(), seek);
+        }
+
+        List<EmployeeSummary> employees = slice.getContent();
+        String nextCursor = null;
+        if (slice.hasNext() && !employees.isEmpty()) {
+          nextCursor = EmployeeCursor.after(sortField, direction, employees.get(employees.size() - 1)).encode();
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("employees", employees);
+        response.put("nextCursor", nextCursor);
+        response.put("hasNext", slice.hasNext());
+        return response;
+    }
+
+    /*
+     * <pre>
+     * Search employees by name and department from search index
+     * Index resolves matching ids, only matching rows are fetched from database
+     * </pre>
+     * @param String query : Searched text
+     * @param String mode : contains, prefix or ranked
+     * @param int limit : Maximum number of employees, between 1 and SEARCH_MAX_LIMIT
+     * @exception EmployeeBadRequestException : If limit is out of range
+     * @exception EmployeeServiceException : If mode is not supported or index is not loaded yet
+     * @return Map<String,Object> : Return map with employee data (best match first in ranked mode) and mode
+     */
+    public Map<String, Object> searchEmployees(String query, String mode, int limit) {
+        log.info("searchEmployees: Search {} in {} mode", query, mode);
+        if (limit < 1 || limit > SEARCH_MAX_LIMIT) {
+          throw new EmployeeBadRequestException("limit must be between 1 and " + SEARCH_MAX_LIMIT);
+        }
+        EmployeeSearchIndex.SearchMode searchMode;
+        try {
+          searchMode = EmployeeSearchIndex.SearchMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+          throw new EmployeeServiceException("Search mode " + mode + " not supported");
+        }
+        List<Long> ids = searchIndex.search(query, searchMode, limit);
+        if (ids == null) {
+          throw new EmployeeServiceException("Search index is not ready");
+        }
+        Map<Long, EmployeeSummary> found = new HashMap<>();
+        if (!ids.isEmpty()) {
+          for (EmployeeSummary employee : employeeRepository.findSummariesByIdIn(ids)) {
+            found.put(employee.getId(), employee);
+          }
+        }
+        List<EmployeeSummary> employees = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+          if (found.containsKey(id)) {
+            employees.add(found.get(id));
+          }
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("employees", employees);
+        response.put("mode", searchMode.name());
+        return response;
+    }
+
+    /*
+     * <pre>
+     * Headcount and salary statistics per department
+     * Served from in-memory aggregate cache, group by query until cache is loaded
+     * </pre>
+     * @return List<DepartmentAggregate> : One entry per department (headcount, salary sum/avg/min/max)
+     */
+    public List<DepartmentAggregate> getDepartmentAggregates() {
+        List<DepartmentAggregate> aggregates = departmentAggregates.getAggregates();
+        if (aggregates == null) {
+          log.info("getDepartmentAggregates: Aggregate cache not loaded, fetch data from database");
+          return employeeRepository.aggregateByDepartment();
+        }
+        return aggregates;
+    }
+
     /*
      * <pre>
      * Fetch single employee with Id
-     * Cache enabled
+     * Read through employee cache : single flight load on miss, refresh ahead, unknown ids cached
+     * No transaction on cache hits, misses are loaded by a read only repository query on primary
      * </pre>
      * @param Long employeeId : Employee Id
      * @exception EmployeeServiceException : If id do not exists in database
-     * @return <Optional>Employee : Return single employee entity
+     * @return EmployeeSummary : Return single employee (id, name, salary, department)
      */
-    @Cacheable(cacheNames = "employee", key="#employeeId")
-    public Employee getEmployee(Long employeeId) {
+    public EmployeeSummary getEmployee(Long employeeId) {
+        return employeeSummaryCache.get(employeeId, this::loadEmployee);
+    }
+
+    private EmployeeSummary loadEmployee(Long employeeId) {
         log.info("getEmployee: Fetch data from database");
-        Optional<Employee> optEmp = employeeRepository.findById(employeeId);
+        Optional<EmployeeSummary> optEmp = employeeRepository.findSummaryById(employeeId);
         if(!optEmp.isPresent())
         {
             throw new EmployeeServiceException("Employee not found with id "+employeeId);
@@ -191,13 +455,19 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
     /*
      * <pre>
      * Delete single employee with Id
-     * Cache evict enabled
+     * Cache evict enabled, change is written to the outbox in the same transaction
      * </pre>
      * @param Long employeeId : Employee Id
      * @exception EmployeeServiceException : If id do not exists in database
+     * @exception EmployeeConflictException : If employee was updated since it was read
      * @return String : Return delete record information
      */
-    @CacheEvict(cacheNames = "employee", key = "#employeeId")
+    @Caching(evict = {
+      @CacheEvict(cacheNames = "employee", key = "#employeeId"),
+      @CacheEvict(cacheNames = {"employeeCount", "employeeListETag"}, allEntries = true),
+      @CacheEvict(cacheNames = "userDetails", allEntries = true)
+    })
+    @Transactional
     public String deleteEmployee(Long employeeId){
       Optional<Employee> employee = employeeRepository.findById(employeeId);
         if(!employee.isPresent())
@@ -205,31 +475,235 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
           throw new EmployeeServiceException("Employee with "+employeeId+ "not found");
         }
         employeeRepository.deleteById(employeeId);
+        changeRepository.save(EmployeeChange.deleted(employee.get()));
+        // Soft delete checks the version, a concurrent update fails here and not at commit
+        try {
+          employeeRepository.flush();
+        } catch (OptimisticLockingFailureException e) {
+          throw new EmployeeConflictException("Employee " + employeeId + " was updated by another request");
+        }
+        String department = employee.get().getDepartment();
+        Integer salary = employee.get().getSalary();
+        afterCommit(() -> {
+          searchIndex.remove(employeeId);
+          departmentAggregates.remove(department, salary);
+        });
         return "Employee "+ employeeId +" deleted";
     }
 
      /*
+     * <pre>
+     * Fetch many employees with Id
+     * Hits are read from employee cache with one multi get, misses are loaded from primary with one in query and cached
+     * </pre>
+     * @param List<Long> employeeIds : Employee Ids, at most BATCH_GET_MAX_IDS
+     * @exception EmployeeServiceException : If too many ids are requested
+     * @return Map<String,Object> : employees in request order (duplicates once) and ids not found in database
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getEmployees(List<Long> employeeIds) {
+        Set<Long> ids = new LinkedHashSet<>(employeeIds);
+        ids.remove(null);
+        if (ids.size() > BATCH_GET_MAX_IDS) {
+          throw new EmployeeServiceException("At most " + BATCH_GET_MAX_IDS + " ids can be fetched at once");
+        }
+        Cache employeeCache = cacheManager.getCache("employee");
+        javax.cache.Cache<Object, Object> nativeCache = employeeCache == null ? null
+          : (javax.cache.Cache<Object, Object>) employeeCache.getNativeCache();
+        Map<Object, Object> found = new HashMap<>();
+        if (nativeCache != null && !ids.isEmpty()) {
+          found.putAll(nativeCache.getAll(ids));
+        }
+        Set<Long> misses = new HashSet<>(ids);
+        misses.removeAll(found.keySet());
+        if (!misses.isEmpty()) {
+          log.info("getEmployees: Fetch {} of {} employees from database", misses.size(), ids.size());
+          Map<Object, Object> loaded = new HashMap<>();
+          for (EmployeeSummary employee : ReplicaRoutingDataSource.readPrimary(() -> employeeRepository.findSummariesByIdIn(misses))) {
+            loaded.put(employee.getId(), employee);
+          }
+          if (nativeCache != null && !loaded.isEmpty()) {
+            nativeCache.putAll(loaded);
+          }
+          found.putAll(loaded);
+        }
+        List<EmployeeSummary> employees = new ArrayList<>(found.size());
+        List<Long> notFound = new ArrayList<>();
+        for (Long id : ids) {
+          EmployeeSummary employee = (EmployeeSummary) found.get(id);
+          if (employee != null) {
+            employees.add(employee);
+          } else {
+            notFound.add(id);
+          }
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("employees", employees);
+        response.put("notFound", notFound);
+        return response;
+    }
+
+    /*
      * <pre>
      * Update single employee with Id
-     * Cache put enabled
+     * Cache write through : employee cache holds the updated summary
+     * Change is written to the outbox in the same transaction
+     * With expected version (If-Match) : one conditional update statement checks the version of the database row,
+     * a null password keeps the stored hash, roles are not changed
+     * Without expected version : version of request body is checked by optimistic locking (stored version if absent)
      * </pre>
      * @param Employee employeeIn
      * @param Long id : Employee Id
-     * @exception EmployeeServiceException : If id do not exists in database
-     * @return <Optional>Employee : Return single employee entity
+     * @param Long expectedVersion : Version from If-Match header, null if not conditional
+     * @exception UsernameNotFoundException : If id do not exists in database
+     * @exception EmployeePreconditionFailedException : If expected version is not current
+     * @exception EmployeeConflictException : If employee was updated since version of request body
+     * @return EmployeeSummary : Return updated employee summary
      */
-    @CachePut(cacheNames = "employee", key = "#employee.employeeIn")
-    public Employee updateEmployee(Employee employeeIn,Long employeeId) {
-     
+    @Caching(put = @CachePut(cacheNames = "employee", key = "#employeeId"), evict = {
+      @CacheEvict(cacheNames = {"employeeCount", "employeeListETag"}, allEntries = true),
+      @CacheEvict(cacheNames = "userDetails", allEntries = true)
+    })
+    @Transactional
+    public EmployeeSummary updateEmployee(Employee employeeIn, Long employeeId, Long expectedVersion) {
+      if (expectedVersion != null) {
+        return updateEmployeeIfVersion(employeeIn, employeeId, expectedVersion);
+      }
       Optional<Employee> employeeData = employeeRepository.findById(employeeId);
-      employeeIn.setPassword(passwordEncoder.encode(employeeIn.getPassword()));
       if (employeeData.isPresent()) {
-        return employeeRepository.save(employeeIn);
+        String storedPassword = employeeData.get().getPassword();
+        // Read before save, merge copies the update into the stored instance
+        String oldDepartment = employeeData.get().getDepartment();
+        Integer oldSalary = employeeData.get().getSalary();
+        if (isPasswordUnchanged(employeeIn.getPassword(), storedPassword)) {
+          employeeIn.setPassword(storedPassword);
+        } else {
+          employeeIn.setPassword(passwordEncoder.encode(employeeIn.getPassword()));
+        }
+        employeeIn.setId(employeeId);
+        if (employeeIn.getVersion() == null) {
+          employeeIn.setVersion(employeeData.get().getVersion());
+        }
+        Employee saved;
+        try {
+          saved = employeeRepository.saveAndFlush(employeeIn);
+        } catch (OptimisticLockingFailureException e) {
+          throw new EmployeeConflictException("Employee " + employeeId + " was updated by another request");
+        }
+        EmployeeSummary summary = new EmployeeSummary(saved.getId(), saved.getName(), saved.getSalary(), saved.getDepartment(), saved.getVersion());
+        afterCommit(() -> {
+          searchIndex.put(summary.getId(), summary.getName(), summary.getDepartment());
+          departmentAggregates.update(oldDepartment, oldSalary, summary.getDepartment(), summary.getSalary());
+        });
+        changeRepository.save(EmployeeChange.of(EmployeeChange.Type.UPDATED, summary));
+        return summary;
       } else {
         throw new UsernameNotFoundException("Employee not found");
       }
     }
 
+    // Conditional update : version of the database row decides, the update statement checks it
+    // A cached summary of the expected version gives the previous values (a version has one state),
+    // otherwise the current summary is read and a stale version is rejected before the update
+    private EmployeeSummary updateEmployeeIfVersion(Employee employeeIn, Long employeeId, Long expectedVersion) {
+      Cache employeeCache = cacheManager.getCache("employee");
+      EmployeeSummary current = employeeCache == null ? null : employeeCache.get(employeeId, EmployeeSummary.class);
+      if (current == null || !expectedVersion.equals(current.getVersion())) {
+        current = employeeRepository.findSummaryById(employeeId)
+          .orElseThrow(() -> new UsernameNotFoundException("Employee not found"));
+        if (!expectedVersion.equals(current.getVersion())) {
+          throw new EmployeePreconditionFailedException("Employee " + employeeId + " is at version " + current.getVersion());
+        }
+      }
+      String password = employeeIn.getPassword() == null ? null : passwordEncoder.encode(employeeIn.getPassword());
+      int updated = employeeRepository.updateIfVersion(employeeId, expectedVersion, employeeIn.getName(),
+        employeeIn.getSalary(), employeeIn.getDepartment(), password);
+      if (updated == 0) {
+        throw new EmployeePreconditionFailedException("Employee " + employeeId + " was updated or deleted by another request");
+      }
+      EmployeeSummary previous = current;
+      afterCommit(() -> {
+        searchIndex.put(employeeId, employeeIn.getName(), employeeIn.getDepartment());
+        departmentAggregates.update(previous.getDepartment(), previous.getSalary(), employeeIn.getDepartment(), employeeIn.getSalary());
+      });
+      EmployeeSummary summary = new EmployeeSummary(employeeId, employeeIn.getName(), employeeIn.getSalary(), employeeIn.getDepartment(), expectedVersion + 1);
+      changeRepository.save(EmployeeChange.of(EmployeeChange.Type.UPDATED, summary));
+      return summary;
+    }
+
+    /*
+     * <pre>
+     * Partial update of single employee (JSON Merge Patch)
+     * Only fields present in patch are applied, only changed columns are written (dynamic update)
+     * Password is encoded only when present, roles can not be patched
+     * Cache write through, user details evicted only when name or password is patched
+     * Change is written to the outbox in the same transaction
+     * </pre>
+     * @param Map<String,Object> patch : Fields to change (name, salary, department, password), version is checked if present
+     * @param Long employeeId : Employee Id
+     * @param Long expectedVersion : Version from If-Match header, null if not conditional
+     * @exception UsernameNotFoundException : If id do not exists in database
+     * @exception EmployeeServiceException : If a field is unknown or has wrong type
+     * @exception EmployeePreconditionFailedException : If expected version is not current
+     * @exception EmployeeConflictException : If employee was updated since version of patch
+     * @return EmployeeSummary : Return updated employee summary
+     */
+    @Transactional
+    @Caching(put = @CachePut(cacheNames = "employee", key = "#employeeId"), evict = {
+      @CacheEvict(cacheNames = {"employeeCount", "employeeListETag"}, allEntries = true),
+      @CacheEvict(cacheNames = "userDetails", allEntries = true, condition = "#patch.containsKey('name') or #patch.containsKey('password')")
+    })
+    public EmployeeSummary patchEmployee(Map<String, Object> patch, Long employeeId, Long expectedVersion) {
+      Employee employee = employeeRepository.findWithoutRolesById(employeeId)
+        .orElseThrow(() -> new UsernameNotFoundException("Employee not found"));
+      if (expectedVersion != null && !expectedVersion.equals(employee.getVersion())) {
+        throw new EmployeePreconditionFailedException("Employee " + employeeId + " is at version " + employee.getVersion());
+      }
+      String oldDepartment = employee.getDepartment();
+      Integer oldSalary = employee.getSalary();
+      for (Map.Entry<String, Object> field : patch.entrySet()) {
+        Object value = field.getValue();
+        switch (field.getKey()) {
+          case "name":
+            employee.setName(patchValue(field, String.class, false));
+            break;
+          case "salary":
+            employee.setSalary(patchValue(field, Integer.class, false));
+            break;
+          case "department":
+            employee.setDepartment(patchValue(field, String.class, true));
+            break;
+          case "password":
+            employee.setPassword(passwordEncoder.encode(patchValue(field, String.class, false)));
+            break;
+          case "version":
+            if (!(value instanceof Number) || ((Number) value).longValue() != employee.getVersion()) {
+              throw new EmployeeConflictException("Employee " + employeeId + " is at version " + employee.getVersion());
+            }
+            break;
+          case "id":
+            break;
+          default:
+            throw new EmployeeServiceException("Field " + field.getKey() + " can not be patched");
+        }
+      }
+      try {
+        employeeRepository.flush();
+      } catch (OptimisticLockingFailureException e) {
+        if (expectedVersion != null) {
+          throw new EmployeePreconditionFailedException("Employee " + employeeId + " was updated by another request");
+        }
+        throw new EmployeeConflictException("Employee " + employeeId + " was updated by another request");
+      }
+      EmployeeSummary summary = new EmployeeSummary(employee.getId(), employee.getName(), employee.getSalary(), employee.getDepartment(), employee.getVersion());
+      afterCommit(() -> {
+        searchIndex.put(summary.getId(), summary.getName(), summary.getDepartment());
+        departmentAggregates.update(oldDepartment, oldSalary, summary.getDepartment(), summary.getSalary());
+      });
+      changeRepository.save(EmployeeChange.of(EmployeeChange.Type.UPDATED, summary));
+      return summary;
+    }
+
     /*
      * <pre>
      * Fetch single employee with name
@@ -241,6 +715,7 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
      * @return <Optional>Employee : Return single employee entity
      */
     @Override
+    @Transactional(readOnly = true)
     public Employee getEmployeeByEmployeeName(String name) {
         log.info("getEmployeeByEmployeeName: Fetching user {}", name);
         Employee employee= employeeRepository.findByName(name);
@@ -253,18 +728,20 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
 
       /*
      * <pre>
-     * Fetch single employee with name
-     * Cache put enabled
+     * Fetch single employee with name for authentication
+     * Cache enabled (userDetails), evicted on role assignment, update and delete
+     * Cached entries are returned as copies, credential erasure after login do not touch the cache
+     * Cache misses are loaded by a read only repository query on primary
      * </pre>
-     * @param Employee employeeIn
-     * @param Long id : Employee Id
-     * @exception UsernameNotFoundException : If id do not exists in database
-     * @return <Optional>Employee : Return single employee entity
+     * @param String name : Employee name
+     * @exception UsernameNotFoundException : If name do not exists in database
+     * @return UserDetails : Return user with interned role authorities
      */
     @Override
+    @Cacheable(cacheNames = "userDetails", key = "#name")
     public UserDetails loadUserByUsername(String name) throws UsernameNotFoundException
     {
-       Employee employee= employeeRepository.findByName(name);
+       Employee employee= ReplicaRoutingDataSource.readPrimary(() -> employeeRepository.findByName(name));
        if(employee==null)
        {
           log.info("Employee with username" +name+" not found in database");
@@ -273,11 +750,129 @@ public class EmployeeServiceImpl implements EmployeeService, UserDetailsService
        else {
           log.info("Employee with username found in the database " + name);
        }
-       Collection<SimpleGrantedAuthority> authorities = new ArrayList<>();
+       List<String> roleNames = new ArrayList<>();
        employee.getRoles().forEach(role -> {
-           authorities.add(new SimpleGrantedAuthority(role.getName()));
+           roleNames.add(role.getName());
        });
-       return new org.springframework.security.core.userdetails.User(employee.getName(),employee.getPassword(),authorities);
+       return RoleAuthorities.user(employee.getName(), employee.getPassword(), roleNames);
+    }
+
+    /*
+     * <pre>
+     * Store upgraded password hash after successful login
+     * Called by authentication provider when stored hash is weaker than current policy
+     * </pre>
+     * @param UserDetails user : Authenticated user
+     * @param String newPassword : Password encoded with current policy
+     * @exception UsernameNotFoundException : If employee do not exists in database
+     * @return UserDetails : User with upgraded password
+     */
+    @Override
+    @Transactional
+    @Caching(evict = {
+      @CacheEvict(cacheNames = "userDetails", key = "#user.username"),
+      @CacheEvict(cacheNames = {"employeeCount", "employeeListETag"}, allEntries = true)
+    })
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        log.info("updatePassword: Upgrade password hash of user {}", user.getUsername());
+        Employee employee = employeeRepository.findByName(user.getUsername());
+        if (employee == null) {
+          throw new UsernameNotFoundException("Employee with username not found in the database");
+        }
+        employee.setPassword(newPassword);
+        employeeRepository.save(employee);
+        evictEmployeeAfterCommit(employee.getId());
+        return org.springframework.security.core.userdetails.User.withUserDetails(user).password(newPassword).build();
+    }
+
+    /*
+     * <pre>
+     * Evict cached authentication data of employee
+     * </pre>
+     * @param String name : Employee name
+     */
+    @Override
+    @CacheEvict(cacheNames = "userDetails", key = "#name")
+    public void evictUserDetails(String name) {
+        log.info("evictUserDetails: Evict cached user {}", name);
+    }
+
+    // Cached summary of an employee whose version changed outside the write through paths, evicted once committed
+    // so a concurrent read can not cache the previous version again
+    private void evictEmployeeAfterCommit(Long employeeId) {
+      Cache employeeCache = cacheManager.getCache("employee");
+      if (employeeCache != null) {
+        afterCommit(() -> employeeCache.evict(employeeId));
+      }
+    }
+
+    // In-memory state (search index, department aggregates, caches) follows committed rows only,
+    // a rolled back write leaves it untouched
+    private static void afterCommit(Runnable action) {
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+      } else {
+        action.run();
+      }
+    }
+
+    // Typed value of merge patch field, null removes the value where allowed
+    private <T> T patchValue(Map.Entry<String, Object> field, Class<T> type, boolean nullable) {
+        Object value = field.getValue();
+        if (value == null ? !nullable : !type.isInstance(value)) {
+          throw new EmployeeServiceException("Invalid value for field " + field.getKey());
+        }
+        return type.cast(value);
+    }
+
+    /*
+     * <pre>
+     * Method for password change decision
+     * Incoming password is unchanged if missing, equal to stored hash or matching stored hash
+     * </pre>
+     * @param String rawPassword : Password from request
+     * @param String storedPassword : Stored password hash
+     * @return boolean : true if stored hash can be kept
+     */
+    private boolean isPasswordUnchanged(String rawPassword, String storedPassword) {
+        if (rawPassword == null || rawPassword.equals(storedPassword)) {
+          return true;
+        }
+        return storedPassword != null && passwordEncoder.matches(rawPassword, storedPassword);
+    }
+
+     /*
+     * <pre>
+     * Method for parsing sort request parameter
+     * </pre>
+     * @param String[] sort : sort=field,direction&sort=field,direction or sort=field&sort=direction
+     * @exception EmployeeServiceException : If a sort field is not indexed
+     * @return List<Order> : Sorting orders in request order
+     */
+    private List<Order> getSortOrders(String[] sort) {
+        List<Order> orders = new ArrayList<Order>();
+        if (sort[0].contains(",")) {
+          // will sort more than 2 fields
+          // sortOrder="field, direction"
+          for (String sortOrder : sort) {
+            String[] _sort = sortOrder.split(",");
+            orders.add(new Order(getSortDirection(_sort[1]), _sort[0]));
+          }
+        } else {
+          // sort=[field, direction]
+          orders.add(new Order(getSortDirection(sort[1]), sort[0]));
+        }
+        for (Order order : orders) {
+          if (!INDEXED_SORT_FIELDS.contains(order.getProperty())) {
+            throw new EmployeeServiceException("Sorting by " + order.getProperty() + " is not supported, use one of " + INDEXED_SORT_FIELDS);
+          }
+        }
+        return orders;
     }
 
      /*
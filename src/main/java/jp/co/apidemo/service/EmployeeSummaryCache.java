@@ -0,0 +1,179 @@
+package jp.co.apidemo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.config.CacheProperties;
+import jp.co.apidemo.config.ReplicaRoutingDataSource;
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.exception.EmployeeServiceException;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
+
+/*
+ * <pre>
+ * Read through access to employee cache
+ * Single flight : one database load per id at a time, concurrent callers of a missing id wait for it
+ * Refresh ahead : a hit older than app.cache.caches[employee].refresh-after is reloaded in background,
+ *                 callers keep getting the cached summary meanwhile
+ * Negative cache : unknown ids are remembered in employeeMissing cache, evicted when employees are created
+ * Loads read primary, a lagging replica would keep a stale or missing row cached for the time to live
+ * </pre>
+ */
+@Service
+@Slf4j
+public class EmployeeSummaryCache {
+
+    public static final String CACHE = "employee";
+    public static final String MISSING_CACHE = "employeeMissing";
+
+    // Load times older than time to live belong to expired entries, dropped once this many are tracked
+    private static final int LOAD_TIMES_PRUNE_SIZE = 10000;
+    private static final int REFRESH_QUEUE_SIZE = 100;
+
+    private final Cache employees;
+    private final Cache missing;
+    private final long refreshAfterMillis;
+    private final long timeToLiveMillis;
+    private final ConcurrentMap<Long, CompletableFuture<EmployeeSummary>> loads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> loadTimes = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor refreshExecutor;
+
+    @Autowired
+    public EmployeeSummaryCache(CacheManager cacheManager, CacheProperties cacheProperties) {
+        this.employees = cacheManager.getCache(CACHE);
+        this.missing = cacheManager.getCache(MISSING_CACHE);
+        CacheProperties.CacheSpec spec = cacheProperties.getCaches().getOrDefault(CACHE, new CacheProperties.CacheSpec());
+        Duration refreshAfter = spec.getRefreshAfter();
+        this.refreshAfterMillis = refreshAfter == null ? 0 : refreshAfter.toMillis();
+        this.timeToLiveMillis = spec.getTimeToLive().toMillis();
+        // One background loader, refreshes beyond the queue are dropped (entry stays valid until its time to live)
+        this.refreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "employee-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /*
+     * <pre>
+     * Cached summary of employee, loaded once on miss
+     * </pre>
+     * @param Long employeeId : Employee Id
+     * @param Function<Long,EmployeeSummary> loader : Database load, throws EmployeeServiceException for unknown id
+     * @exception EmployeeServiceException : If id is unknown (also when remembered as unknown)
+     * @return EmployeeSummary : Summary of employee
+     */
+    public EmployeeSummary get(Long employeeId, Function<Long, EmployeeSummary> loader) {
+        if (missing.get(employeeId) != null) {
+            throw new EmployeeServiceException("Employee not found with id " + employeeId);
+        }
+        EmployeeSummary cached = employees.get(employeeId, EmployeeSummary.class);
+        if (cached != null) {
+            refreshIfDue(employeeId, loader);
+            return cached;
+        }
+        CompletableFuture<EmployeeSummary> load = new CompletableFuture<>();
+        CompletableFuture<EmployeeSummary> running = loads.putIfAbsent(employeeId, load);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            // A load may have completed between the miss and the registration of this one
+            EmployeeSummary employee = employees.get(employeeId, EmployeeSummary.class);
+            if (employee == null) {
+                employee = load(employeeId, loader);
+            }
+            load.complete(employee);
+            return employee;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(employeeId, load);
+        }
+    }
+
+    private EmployeeSummary load(Long employeeId, Function<Long, EmployeeSummary> loader) {
+        EmployeeSummary employee;
+        try {
+            employee = ReplicaRoutingDataSource.readPrimary(() -> loader.apply(employeeId));
+        } catch (EmployeeServiceException e) {
+            missing.put(employeeId, Boolean.TRUE);
+            throw e;
+        }
+        employees.put(employeeId, employee);
+        long now = System.currentTimeMillis();
+        loadTimes.put(employeeId, now);
+        if (loadTimes.size() > LOAD_TIMES_PRUNE_SIZE) {
+            loadTimes.values().removeIf(loadedAt -> now - loadedAt > timeToLiveMillis);
+        }
+        return employee;
+    }
+
+    // Background reload of an old hit, skipped while a load of the same id is running
+    private void refreshIfDue(Long employeeId, Function<Long, EmployeeSummary> loader) {
+        if (refreshAfterMillis <= 0) {
+            return;
+        }
+        Long loadedAt = loadTimes.get(employeeId);
+        if (loadedAt == null || System.currentTimeMillis() - loadedAt < refreshAfterMillis) {
+            return;
+        }
+        CompletableFuture<EmployeeSummary> refresh = new CompletableFuture<>();
+        if (loads.putIfAbsent(employeeId, refresh) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh.complete(load(employeeId, loader));
+                } catch (RuntimeException e) {
+                    log.info("refresh: Employee {} not reloaded : {}", employeeId, e.getMessage());
+                    employees.evict(employeeId);
+                    loadTimes.remove(employeeId);
+                    refresh.completeExceptionally(e);
+                } finally {
+                    loads.remove(employeeId, refresh);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loads.remove(employeeId, refresh);
+            refresh.complete(null);
+        }
+    }
+
+    private static EmployeeSummary await(CompletableFuture<EmployeeSummary> load) {
+        try {
+            EmployeeSummary employee = load.join();
+            if (employee != null) {
+                return employee;
+            }
+            throw new EmployeeServiceException("Employee load was not completed");
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package jp.co.apidemo.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.config.PoolMetrics;
+import jp.co.apidemo.config.ReplicaRoutingDataSource;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * <pre>
+ * Connection pool and Hibernate figures, to tell pool starvation (pending threads, acquire time)
+ * from slow SQL (query max time, statements per query)
+ * Effective pool and batching settings are logged once when application is ready
+ * </pre>
+ */
+@Service
+@Slf4j
+public class PersistenceStatisticsService {
+
+    // Hibernate settings reported at startup, unset values are reported as default
+    private static final List<String> HIBERNATE_SETTINGS = Arrays.asList(
+        "hibernate.jdbc.batch_size", "hibernate.order_inserts", "hibernate.order_updates",
+        "hibernate.jdbc.batch_versioned_data", "hibernate.jdbc.fetch_size", "hibernate.query.plan_cache_max_size",
+        "hibernate.cache.use_second_level_cache", "hibernate.cache.use_query_cache", "hibernate.generate_statistics");
+
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final PoolMetrics poolMetrics;
+    private final ReplicaRoutingDataSource replicaRouting;
+
+    @Autowired
+    public PersistenceStatisticsService(DataSource dataSource, EntityManagerFactory entityManagerFactory, PoolMetrics poolMetrics) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.poolMetrics = poolMetrics;
+        this.replicaRouting = dataSource instanceof ReplicaRoutingDataSource ? (ReplicaRoutingDataSource) dataSource : null;
+    }
+
+    /*
+     * <pre>
+     * Log effective pool and Hibernate settings
+     * </pre>
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportSettings() {
+        log.info("reportSettings: Persistence settings {}", getSettings());
+    }
+
+    /*
+     * <pre>
+     * Effective pool and Hibernate settings
+     * </pre>
+     * @return Map<String, Object> : Setting name to value
+     */
+    public Map<String, Object> getSettings() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        HikariDataSource pool = hikari();
+        if (pool != null) {
+            settings.put("pool.name", pool.getPoolName());
+            settings.put("pool.maximumPoolSize", pool.getMaximumPoolSize());
+            settings.put("pool.minimumIdle", pool.getMinimumIdle());
+            settings.put("pool.connectionTimeout", pool.getConnectionTimeout());
+            settings.put("pool.idleTimeout", pool.getIdleTimeout());
+            settings.put("pool.maxLifetime", pool.getMaxLifetime());
+            settings.put("pool.leakDetectionThreshold", pool.getLeakDetectionThreshold());
+            settings.put("pool.dataSourceProperties", pool.getDataSourceProperties());
+        }
+        Map<String, Object> properties = entityManagerFactory.getProperties();
+        for (String setting : HIBERNATE_SETTINGS) {
+            settings.put(setting, properties.getOrDefault(setting, "default"));
+        }
+        return settings;
+    }
+
+    /*
+     * <pre>
+     * Pool and Hibernate statistics since start
+     * Hibernate figures are 0 unless hibernate.generate_statistics is true
+     * Pool figures are of primary, routing figures are present when read replicas are configured
+     * </pre>
+     * @return Map<String, Map<String, Object>> : pool, routing and hibernate statistics
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+        statistics.put("pool", poolMetrics.getStatistics());
+        if (replicaRouting != null) {
+            statistics.put("routing", replicaRouting.getStatistics());
+        }
+
+        Statistics hibernate = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> queries = new LinkedHashMap<>();
+        queries.put("enabled", hibernate.isStatisticsEnabled());
+        queries.put("queries", hibernate.getQueryExecutionCount());
+        queries.put("queryMaxMillis", hibernate.getQueryExecutionMaxTime());
+        queries.put("slowestQuery", hibernate.getQueryExecutionMaxTimeQueryString());
+        queries.put("statements", hibernate.getPrepareStatementCount());
+        queries.put("transactions", hibernate.getTransactionCount());
+        queries.put("entityLoads", hibernate.getEntityLoadCount());
+        queries.put("entityFetches", hibernate.getEntityFetchCount());
+        queries.put("entityInserts", hibernate.getEntityInsertCount());
+        queries.put("entityUpdates", hibernate.getEntityUpdateCount());
+        queries.put("entityDeletes", hibernate.getEntityDeleteCount());
+        queries.put("secondLevelCacheHits", hibernate.getSecondLevelCacheHitCount());
+        queries.put("secondLevelCacheMisses", hibernate.getSecondLevelCacheMissCount());
+        queries.put("secondLevelCacheHitRatio",
+            ratio(hibernate.getSecondLevelCacheHitCount(), hibernate.getSecondLevelCacheMissCount()));
+        queries.put("queryCacheHits", hibernate.getQueryCacheHitCount());
+        queries.put("queryCacheMisses", hibernate.getQueryCacheMissCount());
+        queries.put("queryCacheHitRatio", ratio(hibernate.getQueryCacheHitCount(), hibernate.getQueryCacheMissCount()));
+        statistics.put("hibernate", queries);
+        return statistics;
+    }
+
+    private HikariDataSource hikari() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+    }
+}
@@ -0,0 +1,84 @@
+package jp.co.apidemo.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * <pre>
+ * Interned granted authorities
+ * Role set is small and fixed, so one SimpleGrantedAuthority instance is shared per role name
+ * Users read back from the serializing userDetails cache intern their authorities again on deserialization
+ * </pre>
+ */
+public final class RoleAuthorities {
+
+    private static final ConcurrentMap<String, SimpleGrantedAuthority> AUTHORITIES = new ConcurrentHashMap<>();
+
+    private RoleAuthorities() {
+    }
+
+    /*
+     * <pre>
+     * Fetch shared authority for role name
+     * </pre>
+     * @param String roleName : Name of role
+     * @return SimpleGrantedAuthority : Shared authority instance
+     */
+    public static SimpleGrantedAuthority of(String roleName) {
+        return AUTHORITIES.computeIfAbsent(roleName, SimpleGrantedAuthority::new);
+    }
+
+    /*
+     * <pre>
+     * Fetch shared authorities for role names
+     * </pre>
+     * @param Collection<String> roleNames : Names of roles
+     * @return List<SimpleGrantedAuthority> : Shared authority instances in input order
+     */
+    public static List<SimpleGrantedAuthority> of(Collection<String> roleNames) {
+        List<SimpleGrantedAuthority> authorities = new ArrayList<>(roleNames.size());
+        for (String roleName : roleNames) {
+            authorities.add(of(roleName));
+        }
+        return authorities;
+    }
+
+    /*
+     * <pre>
+     * User with shared authorities, also when copied by a serializing cache
+     * </pre>
+     * @param String username : Name of user
+     * @param String password : Encoded password
+     * @param Collection<String> roleNames : Names of roles
+     * @return UserDetails : User with shared authority instances
+     */
+    public static UserDetails user(String username, String password, Collection<String> roleNames) {
+        return new InternedUser(username, password, true, of(roleNames));
+    }
+
+    private static final class InternedUser extends User {
+
+        private static final long serialVersionUID = 1L;
+
+        InternedUser(String username, String password, boolean enabled, Collection<? extends GrantedAuthority> authorities) {
+            super(username, password, enabled, true, true, true, authorities);
+        }
+
+        // Deserialized copy gets the shared instances instead of its own authorities
+        private Object readResolve() {
+            List<String> roleNames = new ArrayList<>(getAuthorities().size());
+            for (GrantedAuthority authority : getAuthorities()) {
+                roleNames.add(authority.getAuthority());
+            }
+            return new InternedUser(getUsername(), getPassword(), isEnabled(), of(roleNames));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package jp.co.apidemo.service;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+public interface TokenService {
+
+    /*
+     * <pre>
+     * Sign access token
+     * </pre>
+     * @param String username : Token subject
+     * @param Collection<String> roles : Role names added as roles claim
+     * @param String issuer : Token issuer (request url)
+     * @return String : Signed access token
+     */
+    public String createAccessToken(String username, Collection<String> roles, String issuer);
+
+    /*
+     * <pre>
+     * Sign refresh token
+     * </pre>
+     * @param String username : Token subject
+     * @param String issuer : Token issuer (request url)
+     * @return String : Signed refresh token
+     */
+    public String createRefreshToken(String username, String issuer);
+
+    /*
+     * <pre>
+     * Verify token signature and expiry
+     * </pre>
+     * @param String token : Signed token
+     * @exception JWTVerificationException : If token is invalid or expired
+     * @return DecodedJWT : Decoded token
+     */
+    public DecodedJWT verify(String token);
+
+    /*
+     * <pre>
+     * Write token or error body as json with shared writer
+     * </pre>
+     * @param HttpServletResponse response : Response to write to
+     * @param Map<String, String> body : Response body
+     */
+    public void writeResponse(HttpServletResponse response, Map<String, String> body) throws IOException;
+}
@@ -0,0 +1,146 @@
+package jp.co.apidemo.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import jp.co.apidemo.config.TokenProperties;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/*
+ * <pre>
+ * JWT signing and verification
+ * Algorithm, verifier and json writer are built once from TokenProperties and shared by all requests
+ * </pre>
+ */
+@Service
+@Slf4j
+public class TokenServiceImpl implements TokenService {
+
+    private static final ObjectWriter RESPONSE_WRITER =
+        new ObjectMapper().writerFor(new TypeReference<Map<String, String>>() {});
+
+    private final Algorithm algorithm;
+    private final JWTVerifier verifier;
+    private final long accessTokenTtlMillis;
+    private final long refreshTokenTtlMillis;
+
+    @Autowired
+    public TokenServiceImpl(TokenProperties tokenProperties) {
+        this.algorithm = algorithm(tokenProperties);
+        this.verifier = JWT.require(algorithm).build();
+        this.accessTokenTtlMillis = tokenProperties.getAccessTokenTtl().toMillis();
+        this.refreshTokenTtlMillis = tokenProperties.getRefreshTokenTtl().toMillis();
+        log.info("Token service signing with {}", algorithm.getName());
+    }
+
+    @Override
+    public String createAccessToken(String username, Collection<String> roles, String issuer) {
+        return JWT.create()
+            .withSubject(username)
+            .withExpiresAt(new Date(System.currentTimeMillis() + accessTokenTtlMillis))
+            .withIssuer(issuer)
+            .withClaim("roles", new ArrayList<>(roles))
+            .sign(algorithm);
+    }
+
+    @Override
+    public String createRefreshToken(String username, String issuer) {
+        return JWT.create()
+            .withSubject(username)
+            .withExpiresAt(new Date(System.currentTimeMillis() + refreshTokenTtlMillis))
+            .withIssuer(issuer)
+            .sign(algorithm);
+    }
+
+    @Override
+    public DecodedJWT verify(String token) {
+        return verifier.verify(token);
+    }
+
+    @Override
+    public void writeResponse(HttpServletResponse response, Map<String, String> body) throws IOException {
+        response.setContentType(APPLICATION_JSON_VALUE);
+        RESPONSE_WRITER.writeValue(response.getOutputStream(), body);
+    }
+
+    /*
+     * <pre>
+     * Build signing algorithm from configuration
+     * </pre>
+     * @param TokenProperties tokenProperties : JWT settings
+     * @exception IllegalStateException : If algorithm is unknown or keys can not be read
+     * @return Algorithm : Reusable algorithm instance
+     */
+    public static Algorithm algorithm(TokenProperties tokenProperties) {
+        String name = tokenProperties.getAlgorithm().toUpperCase();
+        try {
+            switch (name) {
+                case "HS256":
+                    return Algorithm.HMAC256(tokenProperties.getSecret().getBytes(StandardCharsets.UTF_8));
+                case "RS256": {
+                    KeyPair keyPair = keyPair("RSA", tokenProperties);
+                    return Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate());
+                }
+                case "ES256": {
+                    KeyPair keyPair = keyPair("EC", tokenProperties);
+                    return Algorithm.ECDSA256((ECPublicKey) keyPair.getPublic(), (ECPrivateKey) keyPair.getPrivate());
+                }
+                default:
+                    throw new IllegalStateException("Unsupported token algorithm " + name);
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IllegalStateException("Can not build token algorithm " + name, e);
+        }
+    }
+
+    private static KeyPair keyPair(String keyAlgorithm, TokenProperties tokenProperties) throws GeneralSecurityException {
+        if (tokenProperties.getPublicKey() == null) {
+            log.warn("No {} key pair configured, generating one, tokens will not verify on other nodes", keyAlgorithm);
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+            if ("EC".equals(keyAlgorithm)) {
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            } else {
+                generator.initialize(2048);
+            }
+            return generator.generateKeyPair();
+        }
+        KeyFactory keyFactory = KeyFactory.getInstance(keyAlgorithm);
+        PublicKey publicKey = keyFactory.generatePublic(
+            new X509EncodedKeySpec(Base64.getDecoder().decode(tokenProperties.getPublicKey())));
+        // Verify only nodes do not hold the private key
+        PrivateKey privateKey = tokenProperties.getPrivateKey() == null ? null
+            : keyFactory.generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(tokenProperties.getPrivateKey())));
+        return new KeyPair(publicKey, privateKey);
+    }
+}
@@ -0,0 +1,26 @@
+-- Schema previously generated by hibernate (ddl-auto)
+create sequence employee_seq start with 1 increment by 50;
+create sequence hibernate_sequence start with 1 increment by 1;
+
+create table role (
+    id bigint not null,
+    name varchar(255),
+    primary key (id)
+);
+
+create table employee (
+    id bigint not null,
+    department varchar(255),
+    employee_name varchar(100) not null,
+    password varchar(255),
+    employee_salary integer not null,
+    primary key (id),
+    constraint uk_employee_name unique (employee_name)
+);
+
+create table employee_roles (
+    employee_id bigint not null,
+    role_id bigint not null,
+    constraint fk_employee_roles_role foreign key (role_id) references role (id),
+    constraint fk_employee_roles_employee foreign key (employee_id) references employee (id)
+);
@@ -0,0 +1,13 @@
+-- Sort and filter columns of employee listing, id breaks ties so paging order comes straight from the index
+-- Both directions are declared : H2 does not scan an index backwards, order by ... desc needs a descending index
+create index idx_employee_id_desc on employee (id desc);
+create index idx_employee_name on employee (employee_name, id);
+create index idx_employee_name_desc on employee (employee_name desc, id desc);
+create index idx_employee_salary on employee (employee_salary, id);
+create index idx_employee_salary_desc on employee (employee_salary desc, id desc);
+create index idx_employee_department on employee (department, id);
+create index idx_employee_department_desc on employee (department desc, id desc);
+
+-- Roles of an employee (authentication, detail) and employees of a role
+create index idx_employee_roles_employee on employee_roles (employee_id, role_id);
+create index idx_employee_roles_role on employee_roles (role_id, employee_id);
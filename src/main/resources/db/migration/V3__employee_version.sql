@@ -0,0 +1,2 @@
+-- Optimistic lock version, source of employee ETags
+alter table employee add column version bigint default 0 not null;
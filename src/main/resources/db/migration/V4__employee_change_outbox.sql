@@ -0,0 +1,21 @@
+-- Transactional outbox of employee writes, rows are inserted in the transaction of the write
+-- feed_position is assigned by the dispatcher in publish order and is the resume offset of the change feed
+create sequence employee_change_seq start with 1 increment by 50;
+
+create table employee_change (
+    id bigint not null,
+    feed_position bigint,
+    change_type varchar(16) not null,
+    employee_id bigint not null,
+    employee_name varchar(100),
+    employee_salary integer,
+    department varchar(255),
+    version bigint,
+    role_name varchar(255),
+    changed_at timestamp not null,
+    primary key (id),
+    constraint uk_employee_change_position unique (feed_position)
+);
+
+-- Unpublished rows (feed_position is null) in insert order
+create index idx_employee_change_pending on employee_change (feed_position, id);
@@ -0,0 +1,22 @@
+-- Auditing timestamps, soft delete tombstone and incremental sync watermark of employees
+alter table employee add column created_at timestamp;
+alter table employee add column updated_at timestamp;
+update employee set created_at = current_timestamp, updated_at = current_timestamp;
+
+-- Deleted employees keep their row : deleted_at is set and tombstone takes the id (0 while live),
+-- so employee names stay unique among live employees only
+alter table employee add column deleted_at timestamp;
+alter table employee add column tombstone bigint default 0 not null;
+alter table employee drop constraint uk_employee_name;
+alter table employee add constraint uk_employee_name_live unique (employee_name, tombstone);
+
+-- Feed position of the last published change of the row, "changed since" queries seek on it
+alter table employee add column change_position bigint;
+create index idx_employee_change_position on employee (change_position);
+
+-- Employees written before the outbox are queued once, so they get a watermark
+-- Negative ids do not collide with ids of the pooled sequence
+insert into employee_change (id, change_type, employee_id, employee_name, employee_salary, department, version, changed_at)
+select -e.id, 'CREATED', e.id, e.employee_name, e.employee_salary, e.department, e.version, current_timestamp
+from employee e
+where not exists (select 1 from employee_change c where c.employee_id = e.id);
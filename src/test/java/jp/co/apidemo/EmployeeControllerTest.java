@@ -16,15 +16,26 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jp.co.apidemo.config.BoundedExecutor;
+import jp.co.apidemo.entities.DepartmentAggregate;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.repository.EmployeeRepository;
+import jp.co.apidemo.repository.RoleRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.service.EmployeeChangeDispatcher;
+import jp.co.apidemo.service.EmployeeChangeService;
 import jp.co.apidemo.service.EmployeeService;
+import jp.co.apidemo.service.RoleAuthorities;
 
 import org.json.simple.JSONObject;  
 import org.json.simple.JSONValue;  
@@ -32,15 +43,45 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import net.sf.ehcache.CacheManager;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import javax.persistence.EntityManagerFactory;
 import javax.swing.text.PasswordView;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.cache.CacheManager;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
 
@@ -60,6 +101,33 @@ public class EmployeeControllerTest {
 
     @Autowired
     PasswordEncoder passwordEncoder;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    BoundedExecutor databaseExecutor;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    EmployeeRepository employeeRepository;
+
+    @Autowired
+    RoleRepository roleRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    UserDetailsService userDetailsService;
+
+    @Autowired
+    EmployeeChangeService employeeChangeService;
+
+    @Autowired
+    EmployeeChangeDispatcher employeeChangeDispatcher;
     
 
     private final String loginUser = "TESTMNG";
@@ -162,6 +230,876 @@ public class EmployeeControllerTest {
             assertEquals("TESTENGG", name); 
     } 
 
+    @Test
+    public void testGetEmployeesUsingCursor() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/employees")
+                .headers(header)
+                .param("after", "")
+                .param("size", "2")
+                .param("sort", "id,asc"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        JacksonJsonParser jsonParser = new JacksonJsonParser();
+        String cursor = (String) jsonParser.parseMap(result).get("nextCursor");
+        assertNotNull(cursor);
+
+        result = mockMvc
+            .perform(get("/api/v1/employees")
+                .headers(header)
+                .param("after", cursor)
+                .param("size", "2"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        List<Object> employees = (List<Object>) jsonParser.parseMap(result).get("employees");
+        assertEquals("TESTTL", ((Map<String, Object>) employees.get(0)).get("name"));
+    }
+
+    @Test
+    public void testSalaryCursorSeeksOnIndex() throws Exception {
+
+        // Seek queries carry a leading salary bound
+        String afterQuery = EmployeeRepository.class.getMethod("seekBySalaryAfter", String.class, Integer.class, Long.class, Pageable.class)
+            .getAnnotation(Query.class).value();
+        String beforeQuery = EmployeeRepository.class.getMethod("seekBySalaryBefore", String.class, Integer.class, Long.class, Pageable.class)
+            .getAnnotation(Query.class).value();
+        assertTrue(afterQuery.contains("e.salary >= :salary and"));
+        assertTrue(beforeQuery.contains("e.salary <= :salary and"));
+
+        // With the bound the salary index range starts at the cursor, without it the index is read from its first row
+        String after = jdbcTemplate.queryForObject("explain select id from employee where deleted_at is null"
+            + " and employee_salary >= 1000 and (employee_salary > 1000 or (employee_salary = 1000 and id > 5))"
+            + " order by employee_salary, id", String.class);
+        assertTrue(after.contains("IDX_EMPLOYEE_SALARY: EMPLOYEE_SALARY >= 1000"));
+        String before = jdbcTemplate.queryForObject("explain select id from employee where deleted_at is null"
+            + " and employee_salary <= 1000 and (employee_salary < 1000 or (employee_salary = 1000 and id < 5))"
+            + " order by employee_salary desc, id desc", String.class);
+        assertTrue(before.contains("IDX_EMPLOYEE_SALARY_DESC: EMPLOYEE_SALARY <= 1000"));
+        String unbounded = jdbcTemplate.queryForObject("explain select id from employee where deleted_at is null"
+            + " and (employee_salary > 1000 or (employee_salary = 1000 and id > 5))"
+            + " order by employee_salary, id", String.class);
+        assertTrue(unbounded.contains("IDX_EMPLOYEE_SALARY */"));
+
+        // Paging by salary visits every employee once, in (salary, id) order
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        List<Long> ids = new ArrayList<>();
+        String cursor = "";
+        do {
+            Map<String, Object> page = new JacksonJsonParser().parseMap(mockMvc
+                .perform(get("/api/v1/employees").headers(header).param("after", cursor).param("size", "2").param("sort", "salary,asc"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+            for (Map<String, Object> employee : (List<Map<String, Object>>) page.get("employees")) {
+                ids.add(((Number) employee.get("id")).longValue());
+            }
+            cursor = (String) page.get("nextCursor");
+        } while (cursor != null);
+        assertEquals(jdbcTemplate.queryForList("select id from employee where deleted_at is null order by employee_salary, id", Long.class), ids);
+    }
+
+    @Test
+    public void testGetEmployeesWithoutTotal() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/employees")
+                .headers(header)
+                .param("name", "TEST")
+                .param("withTotal", "false"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        Map<String, Object> response = new JacksonJsonParser().parseMap(result);
+        assertFalse(response.containsKey("totalItems"));
+        assertEquals(true, response.get("hasNext"));
+    }
+
+    @Test
+    public void testGetCacheStatistics() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        mockMvc.perform(get("/api/v1/employee/get/2").headers(header)).andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/employee/get/2").headers(header)).andExpect(status().isOk());
+
+        String result = mockMvc
+            .perform(get("/api/v1/cache/statistics")
+                .headers(header))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        Map<String, Object> employeeCache = (Map<String, Object>) new JacksonJsonParser().parseMap(result).get("employee");
+        assertNotNull(employeeCache);
+        assertTrue(((Number) employeeCache.get("hits")).longValue() >= 1);
+        assertTrue(((Number) employeeCache.get("misses")).longValue() >= 1);
+    }
+
+    @Test
+    public void testRejectTamperedToken() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        mockMvc.perform(get("/api/v1/employees").headers(header)).andExpect(status().isOk());
+
+        HttpHeaders tampered = new HttpHeaders();
+        tampered.add(AUTHORIZATION, "employee " + token.substring(0, token.length() - 2) + "xx");
+        mockMvc.perform(get("/api/v1/employees").headers(tampered)).andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void testImportEmployees() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        String requestNdjson =
+            "{\"name\":\"IMPORTONE\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\",\"roles\":[{\"name\":\"ROLE_ENGINEER\"}]}\n"
+            + "{\"name\":\"TESTMNG\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\",\"roles\":[]}\n";
+
+        String result = mockMvc
+            .perform(post("/api/v1/employees/import")
+                .headers(header)
+                .contentType("application/x-ndjson").content(requestNdjson))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        String[] rows = result.split("\n");
+        JacksonJsonParser jsonParser = new JacksonJsonParser();
+        assertEquals(2, rows.length);
+        assertEquals("CREATED", jsonParser.parseMap(rows[0]).get("status"));
+        assertEquals("REJECTED", jsonParser.parseMap(rows[1]).get("status"));
+    }
+
+    @Test
+    public void testImportRetriesRowsOfFailedBatch() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        String longName = String.join("", Collections.nCopies(101, "A"));
+        String requestNdjson =
+            "{\"name\":\"ImportRetryOne\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\",\"version\":3}\n"
+            + "{\"name\":\"RejectedByDatabase\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\"}\n"
+            + "{\"name\":\"" + longName + "\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\"}\n"
+            + "{\"name\":\"ImportRetryTwo\",\"salary\":100,\"department\":\"SALES\",\"password\":\"1234\"}\n";
+
+        // Row passing validation but failing in database, fails the JDBC batch
+        jdbcTemplate.execute("alter table employee add constraint chk_import_retry check (employee_name <> 'RejectedByDatabase')");
+        String result;
+        try {
+            result = mockMvc
+                .perform(post("/api/v1/employees/import").headers(header)
+                    .contentType("application/x-ndjson").content(requestNdjson))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        } finally {
+            jdbcTemplate.execute("alter table employee drop constraint chk_import_retry");
+        }
+
+        String[] rows = result.split("\n");
+        JacksonJsonParser jsonParser = new JacksonJsonParser();
+        assertEquals(4, rows.length);
+        for (int created : new int[]{0, 3}) {
+            Map<String, Object> row = jsonParser.parseMap(rows[created]);
+            assertEquals("CREATED", row.get("status"));
+            assertNotNull(row.get("id"));
+            assertEquals(row.get("name"), employeeRepository.findById(((Number) row.get("id")).longValue()).get().getName());
+        }
+        assertEquals("REJECTED", jsonParser.parseMap(rows[1]).get("status"));
+        assertEquals("REJECTED", jsonParser.parseMap(rows[2]).get("status"));
+        assertEquals("Employee name must be at most 100 characters", jsonParser.parseMap(rows[2]).get("error"));
+        assertEquals(0L, employeeRepository.findByName("ImportRetryOne").getVersion().longValue());
+    }
+
+    @Test
+    public void testExportEmployeesAsCsv() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/employees/export")
+                .headers(header)
+                .param("format", "csv"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        String[] rows = result.split("\n");
+        assertEquals("id,name,salary,department,roles", rows[0]);
+        assertEquals("1,TESTENGG,1000,DEVELOPMENT,ROLE_ENGINEER", rows[1]);
+        assertFalse(result.contains("$2a$"));
+    }
+
+    @Test
+    public void testFilterEmployeesByDepartmentAndSalary() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/employees")
+                .headers(header)
+                .param("department", "DEVELOPMENT")
+                .param("minSalary", "1000")
+                .param("maxSalary", "1000")
+                .param("size", "100"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        List<Map<String, Object>> employees = (List<Map<String, Object>>) new JacksonJsonParser().parseMap(result).get("employees");
+        assertFalse(employees.isEmpty());
+        for (Map<String, Object> employee : employees) {
+            assertEquals("DEVELOPMENT", employee.get("department"));
+            assertEquals(1000, employee.get("salary"));
+        }
+
+        // Name resolved by the search index with a department filter : total is counted once, then cached
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        cacheManager.getCache("employeeCount").clear();
+        statistics.clear();
+        mockMvc.perform(get("/api/v1/employees").headers(header).param("name", "TEST").param("department", "DEVELOPMENT").param("size", "1"))
+            .andExpect(status().isOk());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        statistics.clear();
+        result = mockMvc.perform(get("/api/v1/employees").headers(header).param("name", "TEST").param("department", "DEVELOPMENT").param("size", "1"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertTrue(((Number) new JacksonJsonParser().parseMap(result).get("totalItems")).longValue() > 0);
+    }
+
+    @Test
+    public void testDepartmentAggregatesMatchDatabase() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        String result = mockMvc
+            .perform(get("/api/v1/employees/aggregates").headers(header))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // Incrementally maintained values equal a fresh group by
+        String expected = objToJsonString(employeeRepository.aggregateByDepartment().stream()
+            .sorted(Comparator.comparing(DepartmentAggregate::getDepartment, Comparator.nullsLast(Comparator.naturalOrder())))
+            .collect(Collectors.toList()));
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testSearchEmployeesRanked() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/employees/search")
+                .headers(header)
+                .param("q", "testmgn")
+                .param("mode", "ranked"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        List<Map<String, Object>> employees = (List<Map<String, Object>>) new JacksonJsonParser().parseMap(result).get("employees");
+        assertEquals("TESTMNG", employees.get(0).get("name"));
+
+        mockMvc.perform(get("/api/v1/employees/search").headers(header).param("q", "a").param("limit", "-1"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testStatementCountPerEndpoint() throws Exception {
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        cacheManager.getCache("userDetails").clear();
+        cacheManager.getCache("employee").clear();
+
+        // Authentication : employee and roles in one select
+        statistics.clear();
+        String token = obtainAccessToken(loginUser, loginPassword);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        // List : one slice select, roles are not loaded nor serialized
+        statistics.clear();
+        String list = mockMvc
+            .perform(get("/api/v1/employees").headers(header).param("size", "3").param("withTotal", "false"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertFalse(list.contains("roles"));
+        assertFalse(list.contains("password"));
+
+        // Detail : summary columns in one select
+        statistics.clear();
+        String detail = mockMvc
+            .perform(get("/api/v1/employee/get/1").headers(header))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertTrue(detail.contains("TESTENGG"));
+        assertFalse(detail.contains("password"));
+        assertFalse(detail.contains("roles"));
+    }
+
+    @Test
+    public void testNotModifiedWithETag() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        // Detail : strong ETag from version
+        String etag = mockMvc
+            .perform(get("/api/v1/employee/get/1").headers(header))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+        assertFalse(etag.startsWith("W/"));
+        mockMvc
+            .perform(get("/api/v1/employee/get/1").headers(header).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+
+        // List : weak ETag, repeated poll is answered without statement
+        String pageETag = mockMvc
+            .perform(get("/api/v1/employees").headers(header).param("size", "4"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertTrue(pageETag.startsWith("W/"));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        mockMvc
+            .perform(get("/api/v1/employees").headers(header).param("size", "4").header(HttpHeaders.IF_NONE_MATCH, pageETag))
+            .andExpect(status().isNotModified());
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        // Different page is not matched by that ETag
+        mockMvc
+            .perform(get("/api/v1/employees").headers(header).param("size", "4").param("page", "1").header(HttpHeaders.IF_NONE_MATCH, pageETag))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testConditionalUpdate() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        Long id = employeeRepository.findByName("TESTTL").getId();
+
+        String etag = mockMvc
+            .perform(get("/api/v1/employee/get/" + id).headers(header))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Current ETag : one update statement and its outbox row, new ETag returned
+        Employee update = new Employee(null, "TESTTL", 1500, "DEVELOPMENT", null, new ArrayList<>());
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        String newETag = mockMvc
+            .perform(put("/api/v1/employee/update/" + id).headers(header).header(HttpHeaders.IF_MATCH, etag)
+                .contentType(MediaType.APPLICATION_JSON).content(objToJsonString(update)))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertFalse(etag.equals(newETag));
+
+        // Stale ETag : rejected on version read from database, no update statement
+        statistics.clear();
+        mockMvc
+            .perform(put("/api/v1/employee/update/" + id).headers(header).header(HttpHeaders.IF_MATCH, etag)
+                .contentType(MediaType.APPLICATION_JSON).content(objToJsonString(update)))
+            .andExpect(status().isPreconditionFailed());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityUpdateCount());
+
+        // Stale version in body without If-Match : optimistic locking conflict
+        update.setVersion(0L);
+        update.setPassword(loginPassword);
+        mockMvc
+            .perform(put("/api/v1/employee/update/" + id).headers(header)
+                .contentType(MediaType.APPLICATION_JSON).content(objToJsonString(update)))
+            .andExpect(status().isConflict());
+
+        mockMvc
+            .perform(get("/api/v1/employee/get/" + id).headers(header).header(HttpHeaders.IF_NONE_MATCH, newETag))
+            .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void testRoleChangeRenewsETag() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "RoleETagEmployee", 1000, "SALES", "1234", new ArrayList<>()))))
+            .andExpect(status().isOk());
+        Long id = employeeRepository.findByName("RoleETagEmployee").getId();
+        String etag = mockMvc
+            .perform(get("/api/v1/employee/get/" + id).headers(header))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Role assignment increments the version : cached summary and its ETag are replaced
+        mockMvc.perform(post("/api/v1/role/addtoemployee").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"RoleETagEmployee\",\"roleName\":\"ROLE_ENGINEER\"}"))
+            .andExpect(status().isOk());
+        mockMvc
+            .perform(get("/api/v1/employee/get/" + id).headers(header).header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk());
+        String newETag = mockMvc
+            .perform(get("/api/v1/employee/get/" + id).headers(header))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertFalse(etag.equals(newETag));
+
+        Employee update = new Employee(null, "RoleETagEmployee", 1100, "SALES", null, new ArrayList<>());
+        mockMvc
+            .perform(put("/api/v1/employee/update/" + id).headers(header).header(HttpHeaders.IF_MATCH, etag)
+                .contentType(MediaType.APPLICATION_JSON).content(objToJsonString(update)))
+            .andExpect(status().isPreconditionFailed());
+        mockMvc
+            .perform(put("/api/v1/employee/update/" + id).headers(header).header(HttpHeaders.IF_MATCH, newETag)
+                .contentType(MediaType.APPLICATION_JSON).content(objToJsonString(update)))
+            .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testPatchSalary() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        Long id = employeeRepository.findByName("TESTPL").getId();
+
+        // Employee select, one update of changed columns and its outbox row
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        String result = mockMvc
+            .perform(patch("/api/v1/employee/update/" + id).headers(header)
+                .contentType("application/merge-patch+json").content("{\"salary\":1200}"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityUpdateCount());
+
+        Map<String, Object> employee = new JacksonJsonParser().parseMap(result);
+        assertEquals(1200, employee.get("salary"));
+        assertEquals("TESTPL", employee.get("name"));
+        assertEquals("DEVELOPMENT", employee.get("department"));
+        assertTrue(passwordEncoder.matches(loginPassword, employeeRepository.findByName("TESTPL").getPassword()));
+
+        mockMvc
+            .perform(patch("/api/v1/employee/update/" + id).headers(header)
+                .contentType("application/merge-patch+json").content("{\"roles\":[]}"))
+            .andExpect(status().is4xxClientError());
+    }
+
+    @Test
+    public void testBatchGetEmployees() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        Long engg = employeeRepository.findByName("TESTENGG").getId();
+        Long mng = employeeRepository.findByName("TESTMNG").getId();
+        cacheManager.getCache("employee").clear();
+        mockMvc.perform(get("/api/v1/employee/get/" + engg).headers(header)).andExpect(status().isOk());
+
+        // One cached, one loaded, one unknown : single in query
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        String result = mockMvc
+            .perform(post("/api/v1/employees/batch-get").headers(header)
+                .contentType(MediaType.APPLICATION_JSON).content("[" + mng + ", 999999, " + engg + "]"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        Map<String, Object> response = new JacksonJsonParser().parseMap(result);
+        List<Map<String, Object>> employees = (List<Map<String, Object>>) response.get("employees");
+        assertEquals("TESTMNG", employees.get(0).get("name"));
+        assertEquals("TESTENGG", employees.get(1).get("name"));
+        assertEquals(Arrays.asList(999999), response.get("notFound"));
+
+        // Loaded employee is now cached
+        statistics.clear();
+        mockMvc.perform(get("/api/v1/employee/get/" + mng).headers(header)).andExpect(status().isOk());
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testAsyncEndpointsAndBackPressure() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        MvcResult started = mockMvc
+            .perform(get("/api/v1/async/employees").headers(header).param("size", "2"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        String result = mockMvc.perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        assertEquals(2, ((List<?>) new JacksonJsonParser().parseMap(result).get("employees")).size());
+
+        // Saturated database executor : rejected at once with Retry-After
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // Fill threads and queue until the executor refuses, again once idle threads took their task
+            for (int round = 0; round < 2; round++) {
+                Thread.sleep(50);
+                for (boolean accepted = true; accepted; ) {
+                    try {
+                        databaseExecutor.execute(() -> {
+                            try {
+                                release.await(10, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            mockMvc
+                .perform(get("/api/v1/async/employee/get/1").headers(header))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+        } finally {
+            release.countDown();
+        }
+        assertTrue((Long) databaseExecutor.getStatistics().get("rejected") > 0);
+    }
+
+    @Test
+    public void testGetExecutorStatistics() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/executors/statistics").headers(header))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        Map<String, Object> statistics = new JacksonJsonParser().parseMap(result);
+        assertNotNull(statistics.get("database"));
+        assertNotNull(statistics.get("hashing"));
+        assertNotNull(statistics.get("stream"));
+    }
+
+    @Test
+    public void testGetPersistenceStatistics() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+
+        String result = mockMvc
+            .perform(get("/api/v1/persistence/statistics").headers(header))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+
+        Map<String, Object> statistics = new JacksonJsonParser().parseMap(result);
+        Map<String, Object> pool = (Map<String, Object>) statistics.get("pool");
+        Map<String, Object> hibernate = (Map<String, Object>) statistics.get("hibernate");
+        assertTrue(((Number) pool.get("acquired")).longValue() > 0);
+        assertNotNull(pool.get("pending"));
+        assertNotNull(pool.get("acquireMaxMillis"));
+        assertEquals(true, hibernate.get("enabled"));
+        assertTrue(((Number) hibernate.get("statements")).longValue() > 0);
+        assertNotNull(hibernate.get("secondLevelCacheHitRatio"));
+    }
+
+    @Test
+    public void testRoleSecondLevelCache() throws Exception {
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        roleRepository.findByName("ROLE_ENGINEER");
+
+        // Query and entity from cache, no statement
+        statistics.clear();
+        Role role = roleRepository.findByName("ROLE_ENGINEER");
+        assertEquals("ROLE_ENGINEER", role.getName());
+        assertEquals(0, statistics.getPrepareStatementCount());
+        assertTrue(statistics.getQueryCacheHitCount() > 0);
+        assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+
+        // Cached miss is invalidated by saveRole
+        assertEquals(null, roleRepository.findByName("ROLE_AUDITOR"));
+        employeeService.saveRole(new Role(null, "ROLE_AUDITOR"));
+        assertEquals("ROLE_AUDITOR", roleRepository.findByName("ROLE_AUDITOR").getName());
+
+        // Cached roles collection is invalidated by addRoleToEmployee
+        assertEquals(1, employeeRepository.findByName("TESTENGG").getRoles().size());
+        employeeService.addRoleToEmployee("TESTENGG", "ROLE_AUDITOR");
+        List<String> roles = employeeRepository.findByName("TESTENGG").getRoles().stream()
+            .map(Role::getName).sorted().collect(Collectors.toList());
+        assertEquals(Arrays.asList("ROLE_AUDITOR", "ROLE_ENGINEER"), roles);
+    }
+
+    @Test
+    public void testCachedUserSharesRoleAuthorities() {
+
+        // Each cache hit is a deserialized copy, its authorities are the interned instances
+        UserDetails first = userDetailsService.loadUserByUsername("TESTENGG");
+        UserDetails second = userDetailsService.loadUserByUsername("TESTENGG");
+        assertNotSame(first, second);
+        GrantedAuthority authority = second.getAuthorities().iterator().next();
+        assertEquals("ROLE_ENGINEER", authority.getAuthority());
+        assertSame(RoleAuthorities.of("ROLE_ENGINEER"), authority);
+        assertSame(first.getAuthorities().iterator().next(), authority);
+    }
+
+    @Test
+    public void testPasswordCostUpgradeOnLogin() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "CostUpgradeEmployee", 1000, "SALES", loginPassword, new ArrayList<>()))))
+            .andExpect(status().isOk());
+
+        // Hash of a weaker cost than configured strength (10)
+        Employee employee = employeeRepository.findByName("CostUpgradeEmployee");
+        String weakHash = "{bcrypt}" + new BCryptPasswordEncoder(4).encode(loginPassword);
+        employee.setPassword(weakHash);
+        employeeRepository.save(employee);
+
+        obtainAccessToken("CostUpgradeEmployee", loginPassword);
+
+        String upgraded = employeeRepository.findByName("CostUpgradeEmployee").getPassword();
+        assertFalse(weakHash.equals(upgraded));
+        assertTrue(upgraded.startsWith("{bcrypt}$2a$10$"));
+        assertTrue(passwordEncoder.matches(loginPassword, upgraded));
+    }
+
+    @Test
+    public void testEmployeeChangeFeed() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        employeeChangeDispatcher.dispatch();
+        long start = ((Number) readChanges(header, 0).get("next")).longValue();
+
+        List<EmployeeChange> received = new CopyOnWriteArrayList<>();
+        Runnable cancel = employeeChangeService.subscribe(received::add);
+        MvcResult stream = mockMvc
+            .perform(get("/api/v1/employees/changes/stream").headers(header).param("after", String.valueOf(start)))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+        try {
+            mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objToJsonString(new Employee(null, "ChangeFeedEmployee", 1000, "SALES", "1234", new ArrayList<>()))))
+                .andExpect(status().isOk());
+            employeeChangeDispatcher.dispatch();
+        } finally {
+            cancel.run();
+        }
+
+        // In-process subscriber, incremental feed and event stream see the same change
+        EmployeeChange created = received.stream()
+            .filter(change -> "ChangeFeedEmployee".equals(change.getName()))
+            .findFirst().get();
+        assertEquals(EmployeeChange.Type.CREATED, created.getType());
+        assertTrue(created.getPosition() > start);
+
+        Map<String, Object> feed = readChanges(header, start);
+        List<Map<String, Object>> changes = (List<Map<String, Object>>) feed.get("changes");
+        assertTrue(changes.stream().anyMatch(change -> "ChangeFeedEmployee".equals(change.get("name"))
+            && "CREATED".equals(change.get("type")) && created.getPosition().equals(((Number) change.get("position")).longValue())));
+        assertEquals(((Number) changes.get(changes.size() - 1).get("position")).longValue(), ((Number) feed.get("next")).longValue());
+
+        // Events are written by the stream executor, after the handler has returned
+        String events = stream.getResponse().getContentAsString();
+        for (int i = 0; i < 50 && !events.contains("ChangeFeedEmployee"); i++) {
+            Thread.sleep(100);
+            events = stream.getResponse().getContentAsString();
+        }
+        assertTrue(events.contains("id:" + created.getPosition()));
+        assertTrue(events.contains("event:CREATED"));
+        assertTrue(events.contains("ChangeFeedEmployee"));
+
+        mockMvc.perform(get("/api/v1/employees/changes").headers(header).param("limit", "5000"))
+            .andExpect(status().is4xxClientError());
+    }
+
+    @Test
+    public void testChangedSinceSync() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        employeeChangeDispatcher.dispatch();
+        long since = ((Number) readChangedEmployees(header, 0).get("next")).longValue();
+
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "SyncEmployee", 1000, "SALES", "1234", new ArrayList<>()))))
+            .andExpect(status().isOk());
+        Long id = employeeRepository.findByName("SyncEmployee").getId();
+
+        // Not returned before its change is published
+        assertTrue(((List<?>) readChangedEmployees(header, since).get("employees")).isEmpty());
+        employeeChangeDispatcher.dispatch();
+        Map<String, Object> delta = readChangedEmployees(header, since);
+        List<Map<String, Object>> employees = (List<Map<String, Object>>) delta.get("employees");
+        assertEquals(1, employees.size());
+        assertEquals(id.longValue(), ((Number) employees.get(0).get("id")).longValue());
+        assertNotNull(employees.get(0).get("createdAt"));
+        assertNotNull(employees.get(0).get("updatedAt"));
+        assertNull(employees.get(0).get("deletedAt"));
+        long next = ((Number) delta.get("next")).longValue();
+        assertTrue(next > since);
+
+        // Deleted employee : tombstone after the watermark, hidden from reads, name can be used again
+        mockMvc.perform(delete("/api/v1/employee/delete/" + id).headers(header))
+            .andExpect(status().isOk());
+        employeeChangeDispatcher.dispatch();
+        employees = (List<Map<String, Object>>) readChangedEmployees(header, next).get("employees");
+        assertEquals(1, employees.size());
+        assertEquals(id.longValue(), ((Number) employees.get(0).get("id")).longValue());
+        assertNotNull(employees.get(0).get("deletedAt"));
+        assertNull(employeeRepository.findByName("SyncEmployee"));
+        assertFalse(employeeRepository.findById(id).isPresent());
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "SyncEmployee", 1200, "SALES", "1234", new ArrayList<>()))))
+            .andExpect(status().isOk());
+
+        // Created then deleted since the first watermark : the row is returned once
+        employees = (List<Map<String, Object>>) readChangedEmployees(header, since).get("employees");
+        assertEquals(1, employees.stream().filter(employee -> id.equals(((Number) employee.get("id")).longValue())).count());
+
+        mockMvc.perform(get("/api/v1/employees/changes").headers(header).param("since", "0").param("limit", "0"))
+            .andExpect(status().is4xxClientError());
+    }
+
+    @Test
+    public void testPositionsIncreaseAfterPrune() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        employeeChangeDispatcher.dispatch();
+        long last = ((Number) readChanges(header, 0).get("next")).longValue();
+        assertTrue(last > 0);
+
+        // Every published change is past retention : only the last one is kept
+        jdbcTemplate.update("update employee_change set changed_at = dateadd('DAY', -365, changed_at) where feed_position is not null");
+        employeeChangeDispatcher.prune();
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("select count(*) from employee_change", Integer.class));
+
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "PrunedFeedEmployee", 1000, "SALES", "1234", new ArrayList<>()))))
+            .andExpect(status().isOk());
+        employeeChangeDispatcher.dispatch();
+
+        // A consumer resuming from the offset it held before the prune sees the new change
+        List<Map<String, Object>> changes = (List<Map<String, Object>>) readChanges(header, last).get("changes");
+        assertEquals(1, changes.size());
+        assertEquals("PrunedFeedEmployee", changes.get(0).get("name"));
+        assertEquals(last + 1, ((Number) changes.get(0).get("position")).longValue());
+    }
+
+    @Test
+    public void testWatermarkIncreasesAfterPrune() throws Exception {
+
+        String token = obtainAccessToken(loginUser, loginPassword);
+        HttpHeaders header = new HttpHeaders();
+        header.add(AUTHORIZATION, "employee " + token);
+        employeeChangeDispatcher.dispatch();
+        long since = ((Number) readChangedEmployees(header, 0).get("next")).longValue();
+
+        jdbcTemplate.update("update employee_change set changed_at = dateadd('DAY', -365, changed_at) where feed_position is not null");
+        employeeChangeDispatcher.prune();
+
+        mockMvc.perform(post("/api/v1/employee/save").headers(header)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objToJsonString(new Employee(null, "PrunedSyncEmployee", 1000, "SALES", "1234", new ArrayList<>()))))
+            .andExpect(status().isOk());
+        employeeChangeDispatcher.dispatch();
+
+        // A client syncing from the watermark it held before the prune sees the new employee
+        List<Map<String, Object>> employees = (List<Map<String, Object>>) readChangedEmployees(header, since).get("employees");
+        assertEquals(1, employees.size());
+        assertEquals("PrunedSyncEmployee", employees.get(0).get("name"));
+    }
+
+    private Map<String, Object> readChangedEmployees(HttpHeaders header, long since) throws Exception {
+        String result = mockMvc
+            .perform(get("/api/v1/employees/changes").headers(header).param("since", String.valueOf(since)).param("limit", "1000"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        return new JacksonJsonParser().parseMap(result);
+    }
+
+    private Map<String, Object> readChanges(HttpHeaders header, long after) throws Exception {
+        String result = mockMvc
+            .perform(get("/api/v1/employees/changes").headers(header).param("after", String.valueOf(after)).param("limit", "1000"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsString();
+        return new JacksonJsonParser().parseMap(result);
+    }
+
     private String obtainAccessToken(String username, String password) throws Exception {
 
         ResultActions result = mockMvc.perform(
@@ -182,11 +1120,6 @@ public class EmployeeControllerTest {
         return objectMapper.writeValueAsString(obj);
     } 
 
-    @AfterAll
-    public static void cleanUp()
-    {
-        CacheManager.getInstance().shutdown();
-    }
     
     
 
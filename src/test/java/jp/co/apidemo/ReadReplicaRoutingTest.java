@@ -0,0 +1,138 @@
+package jp.co.apidemo;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jp.co.apidemo.config.ReplicaRoutingDataSource;
+import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.repository.EmployeeRepository;
+import jp.co.apidemo.service.EmployeeETags;
+import jp.co.apidemo.service.EmployeeService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * <pre>
+ * Primary and replica are two H2 databases, replica is migrated but not replicated,
+ * so a read tells which database served it
+ * </pre>
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+    "app.datasource.replicas[0].url=jdbc:h2:mem:replica-${random.uuid};DB_CLOSE_DELAY=-1",
+    "app.datasource.migrate-replicas=true",
+    "app.datasource.read-your-writes=1m"
+})
+public class ReadReplicaRoutingTest {
+
+    @Autowired
+    EmployeeService employeeService;
+
+    @Autowired
+    EmployeeRepository employeeRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    CacheManager cacheManager;
+
+    @Autowired
+    UserDetailsService userDetailsService;
+
+    @Autowired
+    EmployeeETags employeeETags;
+
+    @After
+    public void clearClient() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testReadOnlyTransactionsUseReplica() {
+        actAs("TESTENGG");
+
+        // Seeded employees exist on primary only
+        assertNull(employeeRepository.findByName("TESTMNG"));
+        assertNull(employeeService.retrieveEmployees(null, 0, 10, new String[]{"id", "asc"}));
+        Employee employee = new TransactionTemplate(transactionManager)
+            .execute(status -> employeeRepository.findByName("TESTMNG"));
+        assertNotNull(employee);
+
+        Map<String, Long> routed = (Map<String, Long>) replicaRoutingDataSource.getStatistics().get("routed");
+        assertTrue(routed.get(ReplicaRoutingDataSource.PRIMARY) > 0);
+        assertTrue(routed.entrySet().stream()
+            .anyMatch(entry -> !entry.getKey().equals(ReplicaRoutingDataSource.PRIMARY) && entry.getValue() > 0));
+    }
+
+    @Test
+    public void testReadYourWritesStickToPrimary() throws Exception {
+        actAs("TESTTL");
+        employeeService.saveEmployee(new Employee(null, "ReplicaLagEmployee", 1000, "DEVELOPMENT", "1234", new ArrayList<>()));
+
+        // Writer reads its write from primary, other clients read the replica
+        assertEquals("ReplicaLagEmployee", employeeService.getEmployeeByEmployeeName("ReplicaLagEmployee").getName());
+        actAs("TESTPL");
+        assertNull(employeeRepository.findByName("ReplicaLagEmployee"));
+    }
+
+    @Test
+    public void testCacheFillsReadPrimary() {
+        // Read write lookup makes its client read primary, so it runs as a client of its own
+        actAs("CacheFillLookup");
+        Long id = new TransactionTemplate(transactionManager)
+            .execute(status -> employeeRepository.findByName("TESTENGG")).getId();
+        actAs("TESTPL");
+
+        // Seeded employees exist on primary only : single get, batch get and user details find them
+        assertEquals("TESTENGG", employeeService.getEmployee(id).getName());
+        cacheManager.getCache("employee").evict(id);
+        assertEquals(1, ((List<?>) employeeService.getEmployees(Collections.singletonList(id)).get("employees")).size());
+        assertEquals("TESTENGG", userDetailsService.loadUserByUsername("TESTENGG").getUsername());
+    }
+
+    @Test
+    public void testReplicaReadsNotCachedWhileReplicasLag() throws Exception {
+        actAs("TESTTL");
+        employeeService.saveEmployee(new Employee(null, "LaggingCountEmployee", 1000, "DEVELOPMENT", "1234", new ArrayList<>()));
+        assertTrue(replicaRoutingDataSource.isReplicaLagging());
+
+        // Another client counts on the replica, which misses the write : the count is not cached
+        actAs("TESTPL");
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        assertEquals(Long.valueOf(0), readOnly.execute(status -> employeeRepository.countByNameFilter(null)));
+        assertFalse(ReplicaRoutingDataSource.isLaggingRead());
+        assertNull(cacheManager.getCache("employeeCount").get(""));
+
+        Long generation = employeeETags.generation();
+        employeeETags.putPage(generation, "[lagging]", "W/\"0-0\"");
+        assertNull(employeeETags.getPage(generation, "[lagging]"));
+    }
+
+    private static void actAs(String name) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(name, null));
+    }
+}
@@ -1,13 +1,23 @@
 package jp.co.apidemo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
@@ -15,6 +25,7 @@ import org.junit.BeforeClass;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -26,15 +37,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jp.co.apidemo.config.CacheConfig;
 import jp.co.apidemo.entities.Employee;
+import jp.co.apidemo.entities.EmployeeChange;
+import jp.co.apidemo.entities.DepartmentAggregate;
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.service.DepartmentAggregateCache;
+import jp.co.apidemo.service.EmployeeETags;
+import jp.co.apidemo.service.EmployeeSearchIndex;
+import jp.co.apidemo.service.EmployeeSummaryCache;
+import jp.co.apidemo.config.CacheProperties;
 import jp.co.apidemo.entities.Role;
+import jp.co.apidemo.exception.EmployeeBadRequestException;
+import jp.co.apidemo.exception.EmployeeConflictException;
+import jp.co.apidemo.exception.EmployeePreconditionFailedException;
 import jp.co.apidemo.exception.EmployeeServiceException;
+import jp.co.apidemo.repository.EmployeeChangeRepository;
 import jp.co.apidemo.repository.EmployeeRepository;
 import jp.co.apidemo.repository.RoleRepository;
 import jp.co.apidemo.service.EmployeeServiceImpl;
-import net.sf.ehcache.CacheManager;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.ehcache.EhCacheCacheManager;
-import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
@@ -44,10 +67,31 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
 import javax.persistence.Entity;
 
@@ -66,11 +110,31 @@ public class ServiceLayerTest {
      
     Employee employeeIn;
 
+    EmployeeSummary employeeSummary;
+
     Role roleIn;
     
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private EmployeeSearchIndex searchIndex;
+
+    @Mock
+    private DepartmentAggregateCache departmentAggregates;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private Cache employeeCache;
+
+    @Mock
+    private EmployeeSummaryCache employeeSummaryCache;
+
+    @Mock
+    private EmployeeChangeRepository changeRepository;
+
 
     @BeforeEach
     void setup() {
@@ -83,6 +147,8 @@ public class ServiceLayerTest {
         employeeIn.setPassword("1234");
         employeeIn.setRoles(new ArrayList<>());
 
+        employeeSummary = new EmployeeSummary(5L, "TestUser", 1000, "CSE", 0L);
+
         roleIn= new Role();
         roleIn.setId(5L);
         roleIn.setName("ROLE_TEST");
@@ -106,10 +172,11 @@ public class ServiceLayerTest {
     void should_get_employee() {
         long id = 5L;
 
-        when(employeeRepository.findById(id)).thenReturn(Optional.of(employeeIn));
-        Employee employeeOut = employeeServiceImpl.getEmployee(id);
+        readThrough(id);
+        when(employeeRepository.findSummaryById(id)).thenReturn(Optional.of(employeeSummary));
+        EmployeeSummary employeeOut = employeeServiceImpl.getEmployee(id);
 
-        verify(employeeRepository, times(1)).findById(id);
+        verify(employeeRepository, times(1)).findSummaryById(id);
         assertNotNull(employeeOut);
         assertEquals("TestUser", employeeOut.getName());
 
@@ -119,7 +186,8 @@ public class ServiceLayerTest {
     void should_get_employeeNotFound() {
         long id = 5L;
 
-        when(employeeRepository.findById(id)).thenReturn(Optional.of(employeeIn).empty());
+        readThrough(id);
+        when(employeeRepository.findSummaryById(id)).thenReturn(Optional.empty());
         assertThrows(EmployeeServiceException.class, ()-> {employeeServiceImpl.getEmployee(id);});
 
     }
@@ -146,6 +214,51 @@ public class ServiceLayerTest {
        
     }
 
+    @Test
+    void should_update_search_index_after_commit_of_delete() {
+
+        when(employeeRepository.findById(5L)).thenReturn(Optional.of(employeeIn));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            employeeServiceImpl.deleteEmployee(5L);
+            verify(employeeRepository).flush();
+            verify(searchIndex, never()).remove(anyLong());
+            verify(departmentAggregates, never()).remove(any(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(searchIndex).remove(5L);
+            verify(departmentAggregates).remove("CSE", 1000);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void should_reject_delete_of_concurrently_updated_employee() {
+
+        when(employeeRepository.findById(5L)).thenReturn(Optional.of(employeeIn));
+        doThrow(new ObjectOptimisticLockingFailureException(Employee.class, 5L)).when(employeeRepository).flush();
+        assertThrows(EmployeeConflictException.class, ()-> {employeeServiceImpl.deleteEmployee(5L);});
+        verify(searchIndex, never()).remove(anyLong());
+    }
+
+    @Test
+    void should_write_outbox_row_with_employee_write() {
+
+        when(employeeRepository.save(any(Employee.class))).thenReturn(employeeIn);
+        when(passwordEncoder.encode(anyString())).thenReturn("%$%^%^^%^^%^%$%$%$&");
+        employeeServiceImpl.saveEmployee(employeeIn);
+        when(employeeRepository.findById(5L)).thenReturn(Optional.of(employeeIn));
+        employeeServiceImpl.deleteEmployee(5L);
+
+        ArgumentCaptor<EmployeeChange> changes = ArgumentCaptor.forClass(EmployeeChange.class);
+        verify(changeRepository, times(2)).save(changes.capture());
+        assertEquals(EmployeeChange.Type.CREATED, changes.getAllValues().get(0).getType());
+        assertEquals(EmployeeChange.Type.DELETED, changes.getAllValues().get(1).getType());
+        assertEquals(Long.valueOf(5), changes.getAllValues().get(1).getEmployeeId());
+        assertNull(changes.getAllValues().get(1).getPosition());
+    }
+
     @Test
     void should_update_employee() {
     
@@ -171,10 +284,333 @@ public class ServiceLayerTest {
        
     }
      
-    @AfterAll
-    public static void cleanUp()
-    {
-        CacheManager.getInstance().shutdown();
+    @Test
+    void should_retrieve_employees_after_cursor() {
+
+        String[] sort = {"salary", "asc"};
+        when(employeeRepository.findFirstSlice(isNull(), any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(Collections.singletonList(employeeSummary), PageRequest.of(0, 1), true));
+        Map<String, Object> firstPage = employeeServiceImpl.retrieveEmployeesAfter(null, "", 1, sort);
+        String cursor = (String) firstPage.get("nextCursor");
+        assertNotNull(cursor);
+
+        when(employeeRepository.seekBySalaryAfter(isNull(), eq(1000), eq(5L), any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(Collections.emptyList(), PageRequest.of(0, 1), false));
+        Map<String, Object> lastPage = employeeServiceImpl.retrieveEmployeesAfter(null, cursor, 1, sort);
+
+        verify(employeeRepository, times(1)).seekBySalaryAfter(isNull(), eq(1000), eq(5L), any(Pageable.class));
+        assertNull(lastPage.get("nextCursor"));
+    }
+
+    @Test
+    void should_filter_employees_by_department_and_salary() {
+
+        when(employeeRepository.findFilteredSlice(isNull(), eq("CSE"), eq(500), eq(2000), any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(Collections.singletonList(employeeSummary), PageRequest.of(0, 3), false));
+        when(employeeRepository.countByFilter(null, "CSE", 500, 2000)).thenReturn(1L);
+        Map<String, Object> response = employeeServiceImpl.retrieveEmployees(null, "CSE", 500, 2000, 0, 3, new String[]{"id,desc"}, true);
+
+        verify(employeeRepository, never()).findFirstSlice(any(), any(Pageable.class));
+        verify(employeeRepository, never()).countByNameFilter(any());
+        assertEquals(1L, response.get("totalItems"));
+    }
+
+    @Test
+    void should_maintain_department_aggregates() {
+
+        when(employeeRepository.countBySalaryPerDepartment())
+            .thenReturn(Arrays.asList(new Object[]{"CSE", 1000, 2L}, new Object[]{"CSE", 3000, 1L}, new Object[]{null, 500, 1L}));
+        DepartmentAggregateCache cache = new DepartmentAggregateCache(employeeRepository);
+        cache.rebuild();
+
+        cache.remove("CSE", 3000);
+        cache.update("CSE", 1000, "HR", 2000);
+        cache.add("CSE", 1500);
+
+        List<DepartmentAggregate> aggregates = cache.getAggregates();
+        assertEquals(Arrays.asList(
+            new DepartmentAggregate("CSE", 2L, 2500L, 1000, 1500),
+            new DepartmentAggregate("HR", 1L, 2000L, 2000, 2000),
+            new DepartmentAggregate(null, 1L, 500L, 500, 500)), aggregates);
+        verify(employeeRepository, times(1)).countBySalaryPerDepartment();
+    }
+
+    @Test
+    void should_reject_unindexed_sort_field() {
+
+        assertThrows(EmployeeServiceException.class,
+            () -> employeeServiceImpl.retrieveEmployees(null, 0, 3, new String[]{"password,asc"}, true));
+        verify(employeeRepository, never()).findFirstSlice(any(), any(Pageable.class));
+    }
+
+    @Test
+    void should_retrieve_employees_from_search_index() {
+
+        when(searchIndex.findNameContaining("Test")).thenReturn(Collections.singleton(5L));
+        when(employeeRepository.findSliceByIdIn(eq(Collections.singleton(5L)), isNull(), isNull(), isNull(), any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(Collections.singletonList(employeeSummary), PageRequest.of(0, 3), false));
+        Map<String, Object> response = employeeServiceImpl.retrieveEmployees("Test", 0, 3, new String[]{"id,desc"}, true);
+
+        verify(employeeRepository, never()).findFirstSlice(any(), any(Pageable.class));
+        verify(employeeRepository, never()).countByNameFilter(any());
+        assertEquals(1L, response.get("totalItems"));
+    }
+
+    @Test
+    void should_return_lowest_ids_for_short_fragment() {
+
+        EmployeeSearchIndex index = new EmployeeSearchIndex(null, null, 3);
+        List<EmployeeSummary> employees = new ArrayList<>();
+        for (long id = 10; id >= 1; id--) {
+            employees.add(new EmployeeSummary(id, "Ab" + (char) ('a' + id), 1000, "CSE", 0L));
+        }
+        index.load(employees.iterator());
+
+        // Fragment shorter than a trigram : scan in id order, stopped at the limit
+        assertEquals(Arrays.asList(1L, 2L), index.search("a", EmployeeSearchIndex.SearchMode.CONTAINS, 2));
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.search("ab", EmployeeSearchIndex.SearchMode.PREFIX, 3));
+        assertNull(index.findNameContaining("Ab"));
+        assertEquals(Collections.singleton(1L), index.findNameContaining("b" + (char) ('a' + 1)));
+    }
+
+    @Test
+    void should_reject_search_limit_out_of_range() {
+        assertThrows(EmployeeBadRequestException.class, ()-> {employeeServiceImpl.searchEmployees("a", "contains", 0);});
+        assertThrows(EmployeeBadRequestException.class, ()-> {employeeServiceImpl.searchEmployees("a", "contains", EmployeeServiceImpl.SEARCH_MAX_LIMIT + 1);});
+    }
+
+    @Test
+    void should_retrieve_employees_without_total() {
+
+        when(employeeRepository.findFirstSlice(isNull(), any(Pageable.class)))
+            .thenReturn(new SliceImpl<>(Collections.singletonList(employeeSummary), PageRequest.of(0, 3), false));
+        Map<String, Object> response = employeeServiceImpl.retrieveEmployees(null, 0, 3, new String[]{"id,desc"}, false);
+
+        verify(employeeRepository, never()).countByNameFilter(any());
+        assertFalse(response.containsKey("totalItems"));
+        assertEquals(false, response.get("hasNext"));
+    }
+
+    @Test
+    void should_share_role_authorities() {
+
+        employeeIn.getRoles().add(roleIn);
+        when(employeeRepository.findByName("TestUser")).thenReturn(employeeIn);
+
+        UserDetails first = employeeServiceImpl.loadUserByUsername("TestUser");
+        UserDetails second = employeeServiceImpl.loadUserByUsername("TestUser");
+
+        assertSame(first.getAuthorities().iterator().next(), second.getAuthorities().iterator().next());
+        assertEquals("ROLE_TEST", first.getAuthorities().iterator().next().getAuthority());
+    }
+
+    @Test
+    void should_not_rehash_unchanged_password() {
+
+        long id = 5L;
+        Employee stored = new Employee(id, "TestUser", 1000, "CSE", "$2a$10$storedhash", new ArrayList<>());
+        when(employeeRepository.findById(id)).thenReturn(Optional.of(stored));
+        when(passwordEncoder.matches("1234", "$2a$10$storedhash")).thenReturn(true);
+        when(employeeRepository.saveAndFlush(any(Employee.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        EmployeeSummary employeeOut = employeeServiceImpl.updateEmployee(employeeIn, id, null);
+
+        verify(passwordEncoder, never()).encode(anyString());
+        assertEquals("$2a$10$storedhash", employeeIn.getPassword());
+        assertEquals("TestUser", employeeOut.getName());
+    }
+
+    @Test
+    void should_reject_stale_if_match_from_database_version() {
+
+        when(cacheManager.getCache("employee")).thenReturn(employeeCache);
+        when(employeeCache.get(5L, EmployeeSummary.class)).thenReturn(new EmployeeSummary(5L, "TestUser", 1000, "CSE", 4L));
+        when(employeeRepository.findSummaryById(5L)).thenReturn(Optional.of(new EmployeeSummary(5L, "TestUser", 1000, "CSE", 3L)));
+
+        assertThrows(EmployeePreconditionFailedException.class, ()-> {employeeServiceImpl.updateEmployee(employeeIn, 5L, 2L);});
+        verify(employeeRepository, never()).updateIfVersion(any(), any(), any(), any(), any(), any());
+        verify(employeeRepository, never()).findById(any());
+    }
+
+    @Test
+    void should_accept_current_if_match_over_stale_cache() {
+
+        employeeIn.setPassword(null);
+        when(cacheManager.getCache("employee")).thenReturn(employeeCache);
+        when(employeeCache.get(5L, EmployeeSummary.class)).thenReturn(new EmployeeSummary(5L, "TestUser", 1000, "CSE", 2L));
+        when(employeeRepository.findSummaryById(5L)).thenReturn(Optional.of(new EmployeeSummary(5L, "TestUser", 1000, "CSE", 3L)));
+        when(employeeRepository.updateIfVersion(5L, 3L, "TestUser", 1000, "CSE", null)).thenReturn(1);
+
+        EmployeeSummary employeeOut = employeeServiceImpl.updateEmployee(employeeIn, 5L, 3L);
+
+        assertEquals(Long.valueOf(4), employeeOut.getVersion());
+    }
+
+    @Test
+    void should_update_with_single_conditional_statement() {
+
+        employeeIn.setPassword(null);
+        employeeIn.setSalary(2000);
+        when(cacheManager.getCache("employee")).thenReturn(employeeCache);
+        when(employeeCache.get(5L, EmployeeSummary.class)).thenReturn(new EmployeeSummary(5L, "TestUser", 1000, "CSE", 3L));
+        when(employeeRepository.updateIfVersion(5L, 3L, "TestUser", 2000, "CSE", null)).thenReturn(1);
+
+        EmployeeSummary employeeOut = employeeServiceImpl.updateEmployee(employeeIn, 5L, 3L);
+
+        assertEquals(Long.valueOf(4), employeeOut.getVersion());
+        verify(employeeRepository, never()).findById(any());
+        verify(employeeRepository, never()).saveAndFlush(any());
+        verify(passwordEncoder, never()).encode(anyString());
+        verify(departmentAggregates).update("CSE", 1000, "CSE", 2000);
+    }
+
+    @Test
+    void should_patch_salary_without_password_encoding() {
+
+        Employee stored = new Employee(5L, "TestUser", 1000, "CSE", "$2a$10$storedhash", new ArrayList<>(), 3L);
+        when(employeeRepository.findWithoutRolesById(5L)).thenReturn(Optional.of(stored));
+
+        EmployeeSummary employeeOut = employeeServiceImpl.patchEmployee(Collections.singletonMap("salary", 2000), 5L, null);
+
+        verify(passwordEncoder, never()).encode(anyString());
+        verify(employeeRepository, never()).findById(any());
+        verify(departmentAggregates).update("CSE", 1000, "CSE", 2000);
+        assertEquals("$2a$10$storedhash", stored.getPassword());
+        assertEquals(Integer.valueOf(2000), employeeOut.getSalary());
+        assertEquals("TestUser", employeeOut.getName());
+    }
+
+    @Test
+    void should_reject_unknown_patch_field() {
+
+        Employee stored = new Employee(5L, "TestUser", 1000, "CSE", "$2a$10$storedhash", new ArrayList<>(), 3L);
+        when(employeeRepository.findWithoutRolesById(5L)).thenReturn(Optional.of(stored));
+
+        assertThrows(EmployeeServiceException.class, ()-> {employeeServiceImpl.patchEmployee(Collections.singletonMap("roles", new ArrayList<>()), 5L, null);});
+        verify(employeeRepository, never()).flush();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void should_batch_get_cache_hits_and_misses() {
+
+        javax.cache.Cache<Object, Object> nativeCache = mock(javax.cache.Cache.class);
+        EmployeeSummary cached = new EmployeeSummary(7L, "Cached", 1000, "CSE", 0L);
+        when(cacheManager.getCache("employee")).thenReturn(employeeCache);
+        when(employeeCache.getNativeCache()).thenReturn(nativeCache);
+        when(nativeCache.getAll(any())).thenReturn(Collections.singletonMap(7L, cached));
+        when(employeeRepository.findSummariesByIdIn(any())).thenReturn(Arrays.asList(employeeSummary));
+
+        Map<String, Object> response = employeeServiceImpl.getEmployees(Arrays.asList(5L, 9L, 7L, 5L));
+
+        assertEquals(Arrays.asList(employeeSummary, cached), response.get("employees"));
+        assertEquals(Arrays.asList(9L), response.get("notFound"));
+        verify(nativeCache).putAll(Collections.singletonMap(5L, employeeSummary));
+    }
+
+    @Test
+    void should_not_serve_list_etag_computed_during_write() {
+
+        ConcurrentMapCacheManager listCacheManager = new ConcurrentMapCacheManager();
+        EmployeeETags etags = new EmployeeETags(listCacheManager);
+        Long generation = etags.generation();
+        assertEquals(generation, etags.generation());
+
+        // Write commits and evicts while the page is read, the page ETag is stored afterwards
+        listCacheManager.getCache(EmployeeETags.LIST_CACHE).clear();
+        etags.putPage(generation, "query", "W/\"1-stale\"");
+
+        Long current = etags.generation();
+        assertNotEquals(generation, current);
+        assertNull(etags.getPage(current, "query"));
+        etags.putPage(current, "query", "W/\"2-fresh\"");
+        assertEquals("W/\"2-fresh\"", etags.getPage(etags.generation(), "query"));
+    }
+
+    @Test
+    void should_load_missing_employee_once() throws Exception {
+
+        CacheProperties cacheProperties = new CacheProperties();
+        EmployeeSummaryCache summaryCache = new EmployeeSummaryCache(new ConcurrentMapCacheManager(), cacheProperties);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        Function<Long, EmployeeSummary> loader = id -> {
+            loads.incrementAndGet();
+            try {
+                loading.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return employeeSummary;
+        };
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<EmployeeSummary>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> summaryCache.get(5L, loader)));
+        }
+        Thread.sleep(100);
+        loading.countDown();
+        for (Future<EmployeeSummary> result : results) {
+            assertEquals("TestUser", result.get(5, TimeUnit.SECONDS).getName());
+        }
+        callers.shutdown();
+        assertEquals(1, loads.get());
+
+        // Unknown id : loaded once, then answered from negative cache
+        Function<Long, EmployeeSummary> unknown = id -> {
+            loads.incrementAndGet();
+            throw new EmployeeServiceException("Employee not found with id " + id);
+        };
+        assertThrows(EmployeeServiceException.class, ()-> {summaryCache.get(9L, unknown);});
+        assertThrows(EmployeeServiceException.class, ()-> {summaryCache.get(9L, unknown);});
+        assertEquals(2, loads.get());
+        summaryCache.shutdown();
+    }
+
+    @Test
+    void should_refresh_old_employee_in_background() throws Exception {
+
+        CacheProperties cacheProperties = new CacheProperties();
+        CacheProperties.CacheSpec spec = new CacheProperties.CacheSpec();
+        spec.setRefreshAfter(Duration.ofMillis(1));
+        cacheProperties.getCaches().put(EmployeeSummaryCache.CACHE, spec);
+        EmployeeSummaryCache summaryCache = new EmployeeSummaryCache(new ConcurrentMapCacheManager(), cacheProperties);
+        AtomicInteger loads = new AtomicInteger();
+        Function<Long, EmployeeSummary> loader = id ->
+            new EmployeeSummary(id, "TestUser", 1000, "CSE", (long) loads.incrementAndGet());
+
+        assertEquals(Long.valueOf(1), summaryCache.get(5L, loader).getVersion());
+        Thread.sleep(5);
+        // Old hit is served while the reload runs
+        assertEquals(Long.valueOf(1), summaryCache.get(5L, loader).getVersion());
+        long version = 1;
+        for (int i = 0; i < 100 && version < 2; i++) {
+            Thread.sleep(10);
+            version = summaryCache.get(5L, loader).getVersion();
+        }
+        assertTrue(version >= 2);
+        summaryCache.shutdown();
     }
+
+    // Summary cache mock loads through the service loader
+    @SuppressWarnings("unchecked")
+    private void readThrough(Long id) {
+        when(employeeSummaryCache.get(eq(id), any())).thenAnswer(invocation ->
+            ((Function<Long, EmployeeSummary>) invocation.getArgument(1)).apply(id));
+    }
+
+    @Test
+    void should_reject_invalid_cursor() {
+        assertThrows(EmployeeServiceException.class, ()-> {employeeServiceImpl.retrieveEmployeesAfter(null, "not-a-cursor", 3, new String[]{"id,desc"});});
+    }
+
+    @Test
+    void should_reject_cursor_with_invalid_salary() {
+        String cursor = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("salary|ASC|1|abc".getBytes(StandardCharsets.UTF_8));
+        assertThrows(EmployeeServiceException.class, ()-> {employeeServiceImpl.retrieveEmployeesAfter(null, cursor, 3, new String[]{"salary,asc"});});
+    }
+
     
 }
@@ -0,0 +1,103 @@
+package jp.co.apidemo.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * <pre>
+ * First page latency of employee listing per sort field, schema created by the application migrations
+ * password is the unindexed reference (rejected by the API)
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark="EmployeeSortBenchmark -p rows=1000000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class EmployeeSortBenchmark {
+
+    private static final String URL = "jdbc:h2:mem:sortbench;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=0";
+    private static final String[] DEPARTMENTS = {"DEVELOPMENT", "SALES", "FINANCE", "SUPPORT", "MARKETING"};
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"id", "employee_name", "employee_salary", "department", "password"})
+    public String column;
+
+    @Param({"asc", "desc"})
+    public String direction;
+
+    private Connection connection;
+    private PreparedStatement firstPage;
+
+    @Setup
+    public void setup() throws SQLException {
+        Flyway.configure().dataSource(URL, "sa", "").load().migrate();
+        connection = DriverManager.getConnection(URL, "sa", "");
+        Random random = new Random(42);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into employee (id, department, employee_name, password, employee_salary) values (?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= rows; id++) {
+                insert.setLong(1, id);
+                insert.setString(2, DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+                insert.setString(3, "Employee" + Integer.toString(id, 26));
+                insert.setString(4, Long.toHexString(random.nextLong()));
+                insert.setInt(5, 1000 + random.nextInt(100000));
+                insert.addBatch();
+                if (id % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("analyze");
+        }
+        // Same shape as the listing query : summary columns, sort field then id, first page of 20
+        String order = "id".equals(column) ? "id " + direction : column + " " + direction + ", id " + direction;
+        firstPage = connection.prepareStatement("select id, employee_name, employee_salary, department from employee order by "
+            + order + " limit 20");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long sortedFirstPage() throws SQLException {
+        long last = 0;
+        try (ResultSet resultSet = firstPage.executeQuery()) {
+            while (resultSet.next()) {
+                last = resultSet.getLong(1);
+            }
+        }
+        return last;
+    }
+}
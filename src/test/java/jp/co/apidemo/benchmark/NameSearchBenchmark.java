@@ -0,0 +1,128 @@
+package jp.co.apidemo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.co.apidemo.entities.EmployeeSummary;
+import jp.co.apidemo.service.EmployeeSearchIndex;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * <pre>
+ * Name fragment search : like '%fragment%' on H2 against the trigram index
+ * Both sides hold the same random names, the employee name column has a unique index as in the entity
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark="NameSearchBenchmark -p rows=1000000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class NameSearchBenchmark {
+
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    private static final String[] DEPARTMENTS = {"DEVELOPMENT", "SALES", "FINANCE", "SUPPORT", "MARKETING"};
+
+    @Param({"1000000"})
+    public int rows;
+
+    // Fragment of a single name (selective) and of many names
+    @Param({"qxzv", "abc"})
+    public String fragment;
+
+    private Connection connection;
+    private PreparedStatement like;
+    private EmployeeSearchIndex searchIndex;
+
+    @Setup
+    public void setup() throws SQLException {
+        Random random = new Random(42);
+        List<EmployeeSummary> employees = new ArrayList<>(rows);
+        for (long id = 1; id <= rows; id++) {
+            employees.add(new EmployeeSummary(id, name(random, id), 1000, DEPARTMENTS[(int) (id % DEPARTMENTS.length)], 0L));
+        }
+        employees.get(rows / 2).setName("Employeeqxzv");
+
+        connection = DriverManager.getConnection("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table employee (id bigint primary key, employee_name varchar(100) not null unique, department varchar(255))");
+        }
+        try (PreparedStatement insert = connection.prepareStatement("insert into employee values (?, ?, ?)")) {
+            for (EmployeeSummary employee : employees) {
+                insert.setLong(1, employee.getId());
+                insert.setString(2, employee.getName());
+                insert.setString(3, employee.getDepartment());
+                insert.addBatch();
+                if (employee.getId() % 1000 == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        like = connection.prepareStatement("select id from employee where employee_name like ?");
+
+        searchIndex = new EmployeeSearchIndex(null, null, Integer.MAX_VALUE);
+        searchIndex.load(employees.iterator());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Long> likeScan() throws SQLException {
+        like.setString(1, "%" + fragment + "%");
+        List<Long> ids = new ArrayList<>();
+        try (ResultSet resultSet = like.executeQuery()) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    @Benchmark
+    public Set<Long> trigramIndex() {
+        return searchIndex.findNameContaining(fragment);
+    }
+
+    // Unique letters only name, id suffix keeps the unique constraint
+    private static String name(Random random, long id) {
+        StringBuilder name = new StringBuilder();
+        int length = 6 + random.nextInt(6);
+        for (int i = 0; i < length; i++) {
+            name.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        for (long rest = id; rest > 0; rest /= 26) {
+            name.append(LETTERS.charAt((int) (rest % 26)));
+        }
+        return name.toString();
+    }
+}
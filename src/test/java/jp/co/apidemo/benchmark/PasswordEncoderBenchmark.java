@@ -0,0 +1,57 @@
+package jp.co.apidemo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.co.apidemo.config.AdaptiveBCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * <pre>
+ * BCrypt hash and verify cost per strength, single thread
+ * Login capacity per core is roughly 1000 / verify score (ms/op)
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark="PasswordEncoderBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String PASSWORD = "1234";
+
+    @Param({"8", "10", "12"})
+    public int strength;
+
+    private AdaptiveBCryptPasswordEncoder passwordEncoder;
+    private String encodedPassword;
+
+    @Setup
+    public void setup() {
+        passwordEncoder = new AdaptiveBCryptPasswordEncoder(strength);
+        encodedPassword = passwordEncoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public String hash() {
+        return passwordEncoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return passwordEncoder.matches(PASSWORD, encodedPassword);
+    }
+}
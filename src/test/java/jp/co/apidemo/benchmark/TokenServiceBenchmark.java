@@ -0,0 +1,65 @@
+package jp.co.apidemo.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+
+import jp.co.apidemo.config.TokenProperties;
+import jp.co.apidemo.service.TokenService;
+import jp.co.apidemo.service.TokenServiceImpl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * <pre>
+ * Sign and verify throughput of access tokens per algorithm
+ * mvn -Pbenchmark test-compile exec:java -Dbenchmark="TokenServiceBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServiceBenchmark {
+
+    private static final List<String> ROLES = Arrays.asList("ROLE_MANAGER", "ROLE_TEAM_LEADER");
+    private static final String ISSUER = "http://localhost:8080/api/v1/login";
+
+    @Param({"HS256", "RS256", "ES256"})
+    public String algorithm;
+
+    private TokenService tokenService;
+    private String token;
+
+    @Setup
+    public void setup() {
+        TokenProperties tokenProperties = new TokenProperties();
+        tokenProperties.setAlgorithm(algorithm);
+        tokenService = new TokenServiceImpl(tokenProperties);
+        token = tokenService.createAccessToken("TESTMNG", ROLES, ISSUER);
+    }
+
+    @Benchmark
+    public String sign() {
+        return tokenService.createAccessToken("TESTMNG", ROLES, ISSUER);
+    }
+
+    @Benchmark
+    public DecodedJWT verify() {
+        return tokenService.verify(token);
+    }
+}